@@ -0,0 +1,89 @@
+package com.haifachagwey.springmvc.benchmarks;
+
+import com.haifachagwey.springmvc.models.Gradebook;
+import com.haifachagwey.springmvc.models.GradebookCollegeStudent;
+import com.haifachagwey.springmvc.service.StudentAndGradeService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Throughput and latency of the service hot paths against H2 at several roster sizes
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class StudentAndGradeServiceBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int students;
+
+    @Param({"3"})
+    public int gradesPerSubject;
+
+    private ConfigurableApplicationContext context;
+
+    private StudentAndGradeService studentService;
+
+    private JdbcTemplate jdbc;
+
+    private int nextStudentId;
+
+    @Setup(Level.Trial)
+    public void startApplication() {
+        context = GradebookBenchmarkSupport.startApplication();
+        studentService = context.getBean(StudentAndGradeService.class);
+        jdbc = context.getBean(JdbcTemplate.class);
+        GradebookBenchmarkSupport.insertStudents(jdbc, 1, students, gradesPerSubject);
+        nextStudentId = students + 1;
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+
+    // deleteStudent needs a fresh victim for every call, inserted outside of the measured section
+    @State(Scope.Thread)
+    public static class StudentToDelete {
+
+        int id;
+
+        @Setup(Level.Invocation)
+        public void insertStudent(StudentAndGradeServiceBenchmark benchmark) {
+            synchronized (benchmark) {
+                id = benchmark.nextStudentId++;
+            }
+            GradebookBenchmarkSupport.insertStudents(benchmark.jdbc, id, 1, benchmark.gradesPerSubject);
+        }
+    }
+
+    @Benchmark
+    public Gradebook getGradebook() {
+        return studentService.getGradebook();
+    }
+
+    @Benchmark
+    public GradebookCollegeStudent getStudent() {
+        return studentService.getStudent(randomStudentId());
+    }
+
+    @Benchmark
+    public boolean createGrade() {
+        return studentService.createGrade(85.00, randomStudentId(), "math");
+    }
+
+    @Benchmark
+    public void deleteStudent(StudentToDelete student) {
+        studentService.deleteStudent(student.id);
+    }
+
+    private int randomStudentId() {
+        return ThreadLocalRandom.current().nextInt(1, students + 1);
+    }
+}
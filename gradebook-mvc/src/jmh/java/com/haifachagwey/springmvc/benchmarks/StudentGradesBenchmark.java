@@ -0,0 +1,65 @@
+package com.haifachagwey.springmvc.benchmarks;
+
+import com.haifachagwey.springmvc.models.Grade;
+import com.haifachagwey.springmvc.models.StudentGrades;
+import com.haifachagwey.springmvc.models.Subject;
+import com.haifachagwey.springmvc.models.SubjectGrade;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StudentGradesBenchmark {
+
+    @Param({"3", "30", "300"})
+    public int gradeCount;
+
+    private List<Grade> grades;
+
+    private double[] gradeValues;
+
+    private StudentGrades studentGrades;
+
+    @Setup
+    public void createGrades() {
+        grades = new ArrayList<>();
+        for (int i = 0; i < gradeCount; i++) {
+            grades.add(new SubjectGrade(Subject.MATH, 50.00 + (i * 37) % 5101 / 100.0));
+        }
+        gradeValues = new double[gradeCount];
+        for (int i = 0; i < gradeCount; i++) {
+            gradeValues[i] = grades.get(i).getGrade();
+        }
+        studentGrades = new StudentGrades(grades, List.of(), List.of());
+    }
+
+    // The original implementation, kept as the baseline: boxed iteration plus a BigDecimal for the rounding
+    @Benchmark
+    public double bigDecimalGradePointAverage() {
+        double sum = 0;
+        for (Grade grade : grades) {
+            sum += grade.getGrade();
+        }
+        BigDecimal result = BigDecimal.valueOf(sum / grades.size());
+        return result.setScale(2, RoundingMode.HALF_UP).doubleValue();
+    }
+
+    @Benchmark
+    public double findGradePointAverage() {
+        return studentGrades.findGradePointAverage(grades);
+    }
+
+    @Benchmark
+    public double primitiveGradePointAverage() {
+        return studentGrades.findGradePointAverage(gradeValues);
+    }
+}
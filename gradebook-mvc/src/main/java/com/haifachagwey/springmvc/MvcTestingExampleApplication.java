@@ -2,7 +2,6 @@ package com.haifachagwey.springmvc;
 
 import com.haifachagwey.springmvc.models.*;
 import com.haifachagwey.springmvc.models.*;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
@@ -24,28 +23,7 @@ public class MvcTestingExampleApplication {
 	@Bean
 	@Scope(value = "prototype")
     Grade getMathGrade(double grade) {
-		return new MathGrade(grade);
-	}
-
-	@Bean
-	@Scope(value = "prototype")
-	@Qualifier("mathGrades")
-	MathGrade getGrade() {
-		return new MathGrade();
-	}
-
-	@Bean
-	@Scope(value = "prototype")
-	@Qualifier("scienceGrades")
-    ScienceGrade getScienceGrade() {
-		return new ScienceGrade();
-	}
-
-	@Bean
-	@Scope(value = "prototype")
-	@Qualifier("historyGrades")
-    HistoryGrade getHistoryGrade() {
-		return new HistoryGrade();
+		return new SubjectGrade(Subject.MATH, grade);
 	}
 
 }
@@ -4,6 +4,7 @@ import com.haifachagwey.springmvc.models.Gradebook;
 import com.haifachagwey.springmvc.models.*;
 import com.haifachagwey.springmvc.service.StudentAndGradeService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
@@ -17,16 +18,34 @@ public class GradebookController {
     @Autowired
     private StudentAndGradeService studentAndGradeService;
 
+    // ?after=<id>&limit=<n> renders one keyset page of the gradebook instead of every student
     @GetMapping("/")
-    public String getGradebook(Model model) {
-        Gradebook gradebook = studentAndGradeService.getGradebook();
+    public String getGradebook(@RequestParam(value = "after", required = false) Integer after,
+                               @RequestParam(value = "limit", required = false) Integer limit,
+                               Model model) {
+        if (after == null && limit == null) {
+            Gradebook gradebook = studentAndGradeService.getGradebook();
+            model.addAttribute("students", gradebook.getStudents());
+            return "index";
+        }
+        int pageSize = Math.max(1, Math.min(limit == null ? StudentAndGradeService.DEFAULT_PAGE_SIZE : limit, StudentAndGradeService.MAX_PAGE_SIZE));
+        Gradebook gradebook = studentAndGradeService.getGradebookPage(after == null ? 0 : after, pageSize);
         model.addAttribute("students", gradebook.getStudents());
+        model.addAttribute("limit", pageSize);
+        if (gradebook.getStudents().size() == pageSize) {
+            model.addAttribute("nextAfter", gradebook.getStudents().get(pageSize - 1).getId());
+        }
         return "index";
     }
 
     @PostMapping("/")
     public String createStudent(@ModelAttribute("student") CollegeStudent student, Model model) {
-        studentAndGradeService.createStudent(student.getFirstname(), student.getLastname(), student.getEmailAddress());
+        // Caught here rather than in the service, whose transaction the failed insert has already marked for rollback
+        try {
+            studentAndGradeService.createStudent(student.getFirstname(), student.getLastname(), student.getEmailAddress());
+        } catch (DataIntegrityViolationException exc) {
+            return "error";
+        }
         gradebook = studentAndGradeService.getGradebook();
         model.addAttribute("students", gradebook.getStudents());
         return "index";
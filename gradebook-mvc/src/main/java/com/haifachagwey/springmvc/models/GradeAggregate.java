@@ -0,0 +1,102 @@
+package com.haifachagwey.springmvc.models;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.util.Objects;
+
+// Running sum/count/min/max of one student's grades in one subject, kept up to date by every grade write
+@Entity
+@Table(name = "grade_aggregate")
+@IdClass(GradeAggregate.Key.class)
+public class GradeAggregate {
+    @Id
+    @Column(name = "student_id")
+    private int studentId;
+    @Id
+    @Column(name = "subject")
+    private int subject;
+    @Column(name = "total")
+    private double total;
+    @Column(name = "grade_count")
+    private int gradeCount;
+    @Column(name = "min_grade")
+    private Double minGrade;
+    @Column(name = "max_grade")
+    private Double maxGrade;
+
+    public GradeAggregate() {
+
+    }
+
+    public GradeAggregate(int studentId, int subject, double total, int gradeCount, Double minGrade, Double maxGrade) {
+        this.studentId = studentId;
+        this.subject = subject;
+        this.total = total;
+        this.gradeCount = gradeCount;
+        this.minGrade = minGrade;
+        this.maxGrade = maxGrade;
+    }
+
+    public int getStudentId() {
+        return studentId;
+    }
+
+    public int getSubject() {
+        return subject;
+    }
+
+    public String getGradeType() {
+        return Subject.fromCode(subject).getGradeType();
+    }
+
+    public double getTotal() {
+        return total;
+    }
+
+    public int getGradeCount() {
+        return gradeCount;
+    }
+
+    public Double getMinGrade() {
+        return minGrade;
+    }
+
+    public Double getMaxGrade() {
+        return maxGrade;
+    }
+
+    // Rounded the same way as StudentGrades.findGradePointAverage; null when the student has no grades left in the subject
+    public Double getAverage() {
+        return gradeCount == 0 ? null : GradeStatistics.roundToHundredths(total / gradeCount);
+    }
+
+    public static class Key implements Serializable {
+
+        private int studentId;
+        private int subject;
+
+        public Key() {}
+
+        public Key(int studentId, int subject) {
+            this.studentId = studentId;
+            this.subject = subject;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return studentId == key.studentId && subject == key.subject;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(studentId, subject);
+        }
+    }
+}
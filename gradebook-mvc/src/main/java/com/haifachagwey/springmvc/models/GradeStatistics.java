@@ -0,0 +1,52 @@
+package com.haifachagwey.springmvc.models;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+// Primitive grade arithmetic behind StudentGrades. Nothing on the grade-range path allocates.
+public final class GradeStatistics {
+
+    // Beyond this magnitude we defer to BigDecimal; grades never get close
+    private static final double ARITHMETIC_ROUNDING_LIMIT = 1e9;
+
+    private GradeStatistics() {}
+
+    public static double sum(double[] grades, int length) {
+        double result = 0;
+        for (int i = 0; i < length; i++) {
+            result += grades[i];
+        }
+        return result;
+    }
+
+    public static double gradePointAverage(double[] grades, int length) {
+        return roundToHundredths(sum(grades, length) / length);
+    }
+
+    /**
+     * Bit-for-bit the same as {@code BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP).doubleValue()}.
+     * BigDecimal.valueOf rounds the shortest decimal form of the double, and that decimal reaches a halfway
+     * point h exactly when the double itself reaches the double nearest to h, which (k + 0.5) / 100 computes.
+     */
+    public static double roundToHundredths(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new NumberFormatException("Infinite or NaN");
+        }
+        double magnitude = Math.abs(value);
+        if (magnitude >= ARITHMETIC_ROUNDING_LIMIT) {
+            return BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP).doubleValue();
+        }
+        long hundredths = (long) (magnitude * 100);
+        while (hundredths > 0 && magnitude < (hundredths - 0.5) / 100) {
+            hundredths--;
+        }
+        while (magnitude >= (hundredths + 0.5) / 100) {
+            hundredths++;
+        }
+        if (hundredths == 0) {
+            return 0.0;
+        }
+        double result = hundredths / 100.0;
+        return value < 0 ? -result : result;
+    }
+}
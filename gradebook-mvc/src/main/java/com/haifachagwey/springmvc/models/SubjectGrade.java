@@ -0,0 +1,92 @@
+package com.haifachagwey.springmvc.models;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.util.Objects;
+
+// A grade in any subject. All subjects share the grade table, keyed by subject code and id; the student index
+// also carries the grade, so a student's grades are read from one index range without touching the rows.
+// Rows are inserted with plain SQL and the database numbers them, so the id has no JPA generator.
+@Entity
+@Table(name = "grade", indexes = @Index(name = "idx_grade_student_id_subject", columnList = "student_id, subject, grade"))
+@IdClass(SubjectGrade.Key.class)
+public class SubjectGrade implements Grade {
+    @Id
+    @Column(name = "subject", columnDefinition = "tinyint")
+    private int subject;
+    @Id
+    @Column(name = "id", columnDefinition = "integer auto_increment")
+    private int id;
+    @Column(name = "student_id")
+    private int studentId;
+    @Column(name = "grade")
+    private double grade;
+
+    public SubjectGrade() {
+
+    }
+
+    public SubjectGrade(Subject subject, double grade) {
+        this.subject = subject.getCode();
+        this.grade = grade;
+    }
+
+    public int getSubject() {
+        return subject;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public int getStudentId() {
+        return studentId;
+    }
+
+    public void setStudentId(int studentId) {
+        this.studentId = studentId;
+    }
+
+    @Override
+    public double getGrade() {
+        return grade;
+    }
+
+    public void setGrade(double grade) {
+        this.grade = grade;
+    }
+
+    public static class Key implements Serializable {
+
+        private int subject;
+        private int id;
+
+        public Key() {}
+
+        public Key(Subject subject, int id) {
+            this.subject = subject.getCode();
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return subject == key.subject && id == key.id;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(subject, id);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.haifachagwey.springmvc.repository;
+
+import com.haifachagwey.springmvc.models.GradeAggregate;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface GradeAggregateDao extends CrudRepository<GradeAggregate, GradeAggregate.Key> {
+
+    public List<GradeAggregate> findByStudentIdOrderBySubjectAsc(int studentId);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from GradeAggregate a where a.studentId = :studentId")
+    public int deleteByStudentId(@Param("studentId") int studentId);
+}
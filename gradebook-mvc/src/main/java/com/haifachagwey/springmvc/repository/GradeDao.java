@@ -0,0 +1,33 @@
+package com.haifachagwey.springmvc.repository;
+
+import com.haifachagwey.springmvc.models.GradeRow;
+import com.haifachagwey.springmvc.models.SubjectGrade;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+// Every subject's grades, in the one grade table. Queries about a single subject take its code.
+@Repository
+public interface GradeDao extends CrudRepository<SubjectGrade, SubjectGrade.Key> {
+
+    Iterable<SubjectGrade> findGradeBySubjectAndStudentId(int subject, int studentId);
+
+    Iterable<SubjectGrade> findGradeByStudentIdBetween(int fromStudentId, int toStudentId);
+
+    // The grades as read-only rows rather than managed entities, for display
+    @Query("select new com.haifachagwey.springmvc.models.GradeRow(g.subject, g.id, g.studentId, g.grade) from SubjectGrade g")
+    List<GradeRow> findAllRows();
+
+    @Query("select new com.haifachagwey.springmvc.models.GradeRow(g.subject, g.id, g.studentId, g.grade) from SubjectGrade g"
+            + " where g.studentId between :fromStudentId and :toStudentId")
+    List<GradeRow> findRowsByStudentIdBetween(@Param("fromStudentId") int fromStudentId, @Param("toStudentId") int toStudentId);
+
+    // One set-based statement instead of loading every grade and deleting them one by one
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from SubjectGrade g where g.studentId = :studentId")
+    int deleteByStudentId(@Param("studentId") int id);
+}
@@ -1,11 +1,33 @@
 package com.haifachagwey.springmvc.repository;
 
 import com.haifachagwey.springmvc.models.CollegeStudent;
+import com.haifachagwey.springmvc.models.StudentRow;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+
 @Repository
 public interface StudentDao extends CrudRepository<CollegeStudent,Integer> {
 
     CollegeStudent findByEmailAddress(String emailAddress);
+
+    // Deletes without loading the student first; the count tells the caller whether there was one
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from CollegeStudent s where s.id = :id")
+    int deleteStudentById(@Param("id") int id);
+
+    // Every student as a read-only row, in id order
+    @Query("select new com.haifachagwey.springmvc.models.StudentRow(s.id, s.firstname, s.lastname, s.emailAddress)"
+            + " from CollegeStudent s order by s.id")
+    List<StudentRow> findAllRows();
+
+    // Keyset page: the students that come after the given id, in id order
+    @Query("select new com.haifachagwey.springmvc.models.StudentRow(s.id, s.firstname, s.lastname, s.emailAddress)"
+            + " from CollegeStudent s where s.id > :id order by s.id")
+    List<StudentRow> findRowsByIdGreaterThan(@Param("id") int id, Pageable pageable);
 }
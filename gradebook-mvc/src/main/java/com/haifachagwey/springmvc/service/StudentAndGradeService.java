@@ -1,113 +1,112 @@
 package com.haifachagwey.springmvc.service;
 
 import com.haifachagwey.springmvc.models.*;
-import com.haifachagwey.springmvc.repository.HistoryGradeDao;
-import com.haifachagwey.springmvc.repository.MathGradeDao;
-import com.haifachagwey.springmvc.repository.ScienceGradeDao;
+import com.haifachagwey.springmvc.repository.GradeDao;
 import com.haifachagwey.springmvc.repository.StudentDao;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.ui.Model;
 
-import javax.transaction.Transactional;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
 @Transactional
 public class StudentAndGradeService {
 
-    @Autowired
-    private StudentDao studentDao;
+    public static final int DEFAULT_PAGE_SIZE = 50;
 
-    @Autowired
-    private MathGradeDao mathGradeDao;
+    public static final int MAX_PAGE_SIZE = 500;
 
-    @Autowired
-    @Qualifier("mathGrades")
-    private MathGrade mathGrade;
+    // The student row with one row per grade, or a single grade-less row if there are none
+    private static final String STUDENT_INFORMATION_QUERY = "select s.id, s.firstname, s.lastname, s.email_address, g.subject, g.id as grade_id, g.grade"
+            + " from student s left join grade g on g.student_id = s.id where s.id = :id order by g.subject, g.id";
 
     @Autowired
-    private ScienceGradeDao scienceGradeDao;
+    private StudentDao studentDao;
 
     @Autowired
-    @Qualifier("scienceGrades")
-    private ScienceGrade scienceGrade;
+    private GradeDao gradeDao;
 
     @Autowired
-    private HistoryGradeDao historyGradeDao;
+    private JdbcTemplate jdbc;
 
     @Autowired
-    @Qualifier("historyGrades")
-    private HistoryGrade historyGrade;
+    private GradeAggregateService gradeAggregateService;
 
-    @Autowired
-    private StudentGrades studentGrades;
+    @PersistenceContext
+    private EntityManager entityManager;
 
     public void createStudent(String firstName, String lastName, String emailAddress) {
         CollegeStudent student = new CollegeStudent(firstName, lastName, emailAddress);
         studentDao.save(student);
     }
 
+    // A count query rather than loading the student into the persistence context
+    @Transactional(readOnly = true)
     public boolean checkIfStudentExist(int id) {
-        Optional<CollegeStudent> student = studentDao.findById(id);
-        if (student.isPresent()) {
-            return true;
-        }
-        return false;
+        return studentDao.existsById(id);
     }
 
+    // A constant three statements however many grades the student has
     public void deleteStudent(int id) {
-        if (checkIfStudentExist(id)) {
-            studentDao.deleteById(id);
-            mathGradeDao.deleteByStudentId(id);
-            scienceGradeDao.deleteByStudentId(id);
-            historyGradeDao.deleteByStudentId(id);
+        if (studentDao.deleteStudentById(id) > 0) {
+            gradeDao.deleteByStudentId(id);
+            gradeAggregateService.removeStudent(id);
         }
     }
 
+    // Read-only, and built from constructor projections: nothing enters the persistence context, so there are no
+    // entity snapshots to keep and nothing to dirty-check or flush at the end
+    @Transactional(readOnly = true)
     public Gradebook getGradebook () {
 
-        Iterable<CollegeStudent> collegeStudents = studentDao.findAll();
+        List<StudentRow> students = studentDao.findAllRows();
 
-        Iterable<MathGrade> mathGrades = mathGradeDao.findAll();
+        Map<Integer, List<SubjectGrade>> gradesByStudentId = groupGradesByStudentId(gradeDao.findAllRows());
 
-        Iterable<ScienceGrade> scienceGrades = scienceGradeDao.findAll();
+        return buildGradebook(students, gradesByStudentId);
+    }
 
-        Iterable<HistoryGrade> historyGrades = historyGradeDao.findAll();
+    // One page of the gradebook: at most limit students with an id greater than afterId, in id order
+    @Transactional(readOnly = true)
+    public Gradebook getGradebookPage(int afterId, int limit) {
 
-        Gradebook gradebook = new Gradebook();
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
 
-        for (CollegeStudent collegeStudent : collegeStudents) {
-            List<Grade> mathGradesPerStudent = new ArrayList<>();
-            List<Grade> scienceGradesPerStudent = new ArrayList<>();
-            List<Grade> historyGradesPerStudent = new ArrayList<>();
+        List<StudentRow> students = studentDao.findRowsByIdGreaterThan(afterId, PageRequest.of(0, pageSize));
 
-            for (MathGrade grade : mathGrades) {
-                if (grade.getStudentId() == collegeStudent.getId()) {
-                    mathGradesPerStudent.add(grade);
-                }
-            }
-            for (ScienceGrade grade : scienceGrades) {
-                if (grade.getStudentId() == collegeStudent.getId()) {
-                    scienceGradesPerStudent.add(grade);
-                }
-            }
+        if (students.isEmpty()) {
+            return new Gradebook();
+        }
 
-            for (HistoryGrade grade : historyGrades) {
-                if (grade.getStudentId() == collegeStudent.getId()) {
-                    historyGradesPerStudent.add(grade);
-                }
-            }
+        int firstId = students.get(0).id();
+        int lastId = students.get(students.size() - 1).id();
+
+        Map<Integer, List<SubjectGrade>> gradesByStudentId = groupGradesByStudentId(gradeDao.findRowsByStudentIdBetween(firstId, lastId));
+
+        return buildGradebook(students, gradesByStudentId);
+    }
+
+    private static Gradebook buildGradebook(List<StudentRow> students, Map<Integer, List<SubjectGrade>> gradesByStudentId) {
 
-            studentGrades.setMathGradeResults(mathGradesPerStudent);
-            studentGrades.setScienceGradeResults(scienceGradesPerStudent);
-            studentGrades.setHistoryGradeResults(historyGradesPerStudent);
+        Gradebook gradebook = new Gradebook();
 
-            GradebookCollegeStudent gradebookCollegeStudent = new GradebookCollegeStudent(collegeStudent.getId(), collegeStudent.getFirstname(), collegeStudent.getLastname(),
-                    collegeStudent.getEmailAddress(), studentGrades);
+        for (StudentRow student : students) {
+            StudentGrades studentGrades = StudentGrades.of(gradesByStudentId.getOrDefault(student.id(), List.of()));
+
+            GradebookCollegeStudent gradebookCollegeStudent = new GradebookCollegeStudent(student.id(), student.firstname(), student.lastname(),
+                    student.emailAddress(), studentGrades);
 
             gradebook.getStudents().add(gradebookCollegeStudent);
         }
@@ -115,118 +114,93 @@ public class StudentAndGradeService {
         return gradebook;
     }
 
+    // Buckets grades by student id in a single pass so the gradebook is assembled in linear time. The grades are
+    // plain objects, never attached to the persistence context.
+    private static Map<Integer, List<SubjectGrade>> groupGradesByStudentId(List<GradeRow> rows) {
+        Map<Integer, List<SubjectGrade>> gradesByStudentId = new HashMap<>();
+        for (GradeRow row : rows) {
+            SubjectGrade grade = Subject.fromCode(row.subject()).newGrade(row.grade(), row.studentId());
+            grade.setId(row.id());
+            gradesByStudentId.computeIfAbsent(row.studentId(), studentId -> new ArrayList<>()).add(grade);
+        }
+        return gradesByStudentId;
+    }
+
     public boolean createGrade(double grade, int studentId, String gradeType) {
         if (!checkIfStudentExist(studentId)) {
             return false;
         }
-        if (grade >= 0 && grade <= 100) {
-            if (gradeType.equals("math")) {
-                mathGrade.setGrade(grade);
-                mathGrade.setStudentId(studentId);
-                mathGradeDao.save(mathGrade);
-                return true;
-            }
-            if (gradeType.equals("science")) {
-                scienceGrade.setGrade(grade);
-                scienceGrade.setStudentId(studentId);
-                scienceGradeDao.save(scienceGrade);
-                return true;
-            }
-            if (gradeType.equals("history")) {
-                historyGrade.setGrade(grade);
-                historyGrade.setStudentId(studentId);
-                historyGradeDao.save(historyGrade);
-                return true;
-            }
+        Subject subject = Subject.fromGradeType(gradeType);
+        if (subject == null || !(grade >= 0 && grade <= 100)) {
+            return false;
         }
-        return false;
+        jdbc.update("insert into grade(subject,student_id,grade) values (?,?,?)", subject.getCode(), studentId, grade);
+        gradeAggregateService.add(subject, studentId, grade);
+        return true;
     }
 
     public int deleteGrade(int gradeId, String gradeType) {
-        int studentId = 0;
-        if(gradeType.equals("math")){
-            Optional<MathGrade> grade = mathGradeDao.findById(gradeId);
-            if(!grade.isPresent()) {
-                return studentId;
-            }
-            studentId = grade.get().getStudentId();
-            mathGradeDao.deleteById(gradeId);
+        Subject subject = Subject.fromGradeType(gradeType);
+        if (subject == null) {
+            return 0;
         }
-        if(gradeType.equals("science")){
-            Optional<ScienceGrade> grade = scienceGradeDao.findById(gradeId);
-            if(!grade.isPresent()) {
-                return studentId;
-            }
-            studentId = grade.get().getStudentId();
-            scienceGradeDao.deleteById(gradeId);
-        }
-        if(gradeType.equals("history")){
-            Optional<HistoryGrade> grade = historyGradeDao.findById(gradeId);
-            if(!grade.isPresent()) {
-                return studentId;
-            }
-            studentId = grade.get().getStudentId();
-            historyGradeDao.deleteById(gradeId);
+        Optional<SubjectGrade> grade = gradeDao.findById(new SubjectGrade.Key(subject, gradeId));
+        if (!grade.isPresent()) {
+            return 0;
         }
-        return  studentId;
+        gradeDao.delete(grade.get());
+        entityManager.flush();
+        gradeAggregateService.recompute(subject, grade.get().getStudentId());
+        return grade.get().getStudentId();
     }
 
-    // Get student information by its id
+    // Get student information by its id, together with all of their grades in one query
+    @Transactional(readOnly = true)
     public GradebookCollegeStudent getStudent(int studentId) {
-        if (!checkIfStudentExist(studentId)) {
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = entityManager.createNativeQuery(STUDENT_INFORMATION_QUERY)
+                .setParameter("id", studentId)
+                .getResultList();
+        if (rows.isEmpty()) {
             return null;
         }
-        Optional<CollegeStudent> student = studentDao.findById(studentId);
-        Iterable<MathGrade> mathGrades = mathGradeDao.findGradeByStudentId(studentId);
-        Iterable<ScienceGrade> scienceGrades = scienceGradeDao.findGradeByStudentId(studentId);
-        Iterable<HistoryGrade> historyGrades = historyGradeDao.findGradeByStudentId(studentId);
-
-        List<Grade> mathGradeList = new ArrayList<>();
-        mathGrades.forEach(mathGradeList::add);
-
-        List<Grade> scienceGradeList = new ArrayList<>();
-        scienceGrades.forEach(scienceGradeList::add);
 
-        List<Grade> historyGradeList = new ArrayList<>();
-        historyGrades.forEach(historyGradeList::add);
-
-        studentGrades.setMathGradeResults(mathGradeList);
-        studentGrades.setScienceGradeResults(scienceGradeList);
-        studentGrades.setHistoryGradeResults(historyGradeList);
+        List<SubjectGrade> grades = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            if (row[4] == null) {
+                continue;
+            }
+            SubjectGrade grade = Subject.fromCode(((Number) row[4]).intValue()).newGrade(((Number) row[6]).doubleValue(), studentId);
+            grade.setId(((Number) row[5]).intValue());
+            grades.add(grade);
+        }
+        StudentGrades studentGrades = StudentGrades.of(grades);
 
-        GradebookCollegeStudent gradebookCollegeStudent = new GradebookCollegeStudent(student.get().getId(),
-                student.get().getFirstname(), student.get().getLastname(), student.get().getEmailAddress(), studentGrades);
-        return gradebookCollegeStudent;
+        Object[] student = rows.get(0);
+        return new GradebookCollegeStudent(((Number) student[0]).intValue(), (String) student[1], (String) student[2],
+                (String) student[3], studentGrades);
     }
 
+    // Averages come straight from the maintained aggregates rather than being recomputed from the grade lists
     public void configureStudentInformationModel(int studentId, Model model) {
 
         GradebookCollegeStudent studentEntity = getStudent(studentId);
 
         model.addAttribute("student", studentEntity);
-        if (studentEntity.getStudentGrades().getMathGradeResults().size() > 0) {
-            model.addAttribute("mathAverage", studentEntity.getStudentGrades().findGradePointAverage(
-                    studentEntity.getStudentGrades().getMathGradeResults()
-            ));
-        } else {
-            model.addAttribute("mathAverage", "N/A");
-        }
 
-        if (studentEntity.getStudentGrades().getScienceGradeResults().size() > 0) {
-            model.addAttribute("scienceAverage", studentEntity.getStudentGrades().findGradePointAverage(
-                    studentEntity.getStudentGrades().getScienceGradeResults()
-            ));
-        } else {
-            model.addAttribute("scienceAverage", "N/A");
+        Map<Subject, Object> averages = new EnumMap<>(Subject.class);
+        for (Subject subject : Subject.values()) {
+            averages.put(subject, "N/A");
         }
-
-        if (studentEntity.getStudentGrades().getHistoryGradeResults().size() > 0) {
-            model.addAttribute("historyAverage", studentEntity.getStudentGrades().findGradePointAverage(
-                    studentEntity.getStudentGrades().getHistoryGradeResults()
-            ));
-        } else {
-            model.addAttribute("historyAverage", "N/A");
+        for (GradeAggregate aggregate : gradeAggregateService.findByStudentId(studentId)) {
+            if (aggregate.getAverage() != null) {
+                averages.put(Subject.fromCode(aggregate.getSubject()), aggregate.getAverage());
+            }
         }
+
+        model.addAttribute("mathAverage", averages.get(Subject.MATH));
+        model.addAttribute("scienceAverage", averages.get(Subject.SCIENCE));
+        model.addAttribute("historyAverage", averages.get(Subject.HISTORY));
     }
 
 
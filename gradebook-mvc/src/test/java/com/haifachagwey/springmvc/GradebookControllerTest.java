@@ -1,9 +1,7 @@
 package com.haifachagwey.springmvc;
 
 import com.haifachagwey.springmvc.models.*;
-import com.haifachagwey.springmvc.repository.HistoryGradeDao;
-import com.haifachagwey.springmvc.repository.MathGradeDao;
-import com.haifachagwey.springmvc.repository.ScienceGradeDao;
+import com.haifachagwey.springmvc.repository.GradeDao;
 import com.haifachagwey.springmvc.repository.StudentDao;
 import com.haifachagwey.springmvc.service.StudentAndGradeService;
 import org.junit.jupiter.api.*;
@@ -50,13 +48,7 @@ public class GradebookControllerTest {
     private StudentDao studentDao;
 
     @Autowired
-    private MathGradeDao mathGradeDao;
-
-    @Autowired
-    private ScienceGradeDao scienceGradeDao;
-
-    @Autowired
-    private HistoryGradeDao historyGradeDao;
+    private GradeDao gradeDao;
 
     @Value("${sql.scripts.create.student}")
     private String sqlAddStudent;
@@ -112,6 +104,25 @@ public class GradebookControllerTest {
         assertEquals("Haifa", studentList.get(0).getFirstname());
     }
 
+    @Test
+    public void getGradebookPageHttpRequest() throws Exception {
+        studentAndGradeService.createStudent("Eric", "Roby", "eric.roby@gmail.com");
+        MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders.get("/").param("limit", "1"))
+                .andExpect(status().isOk()).andReturn();
+        ModelAndView modelAndView = mvcResult.getModelAndView();
+        ModelAndViewAssert.assertViewName(modelAndView, "index");
+        List<GradebookCollegeStudent> studentList = (List<GradebookCollegeStudent>) modelAndView.getModel().get("students");
+        assertEquals(1, studentList.size());
+        assertEquals("Haifa", studentList.get(0).getFirstname());
+        assertEquals(1, modelAndView.getModel().get("nextAfter"));
+
+        mvcResult = mockMvc.perform(MockMvcRequestBuilders.get("/").param("after", "1").param("limit", "1"))
+                .andExpect(status().isOk()).andReturn();
+        studentList = (List<GradebookCollegeStudent>) mvcResult.getModelAndView().getModel().get("students");
+        assertEquals(1, studentList.size());
+        assertEquals("Eric", studentList.get(0).getFirstname());
+    }
+
     @Test
     @Order(1)
     public void createStudentHttpRequest() throws Exception {
@@ -127,6 +138,17 @@ public class GradebookControllerTest {
         assertNotNull(verifyStudent, "Student should be found after create");
     }
 
+    @Test
+    public void createStudentWithTakenEmailHttpRequest() throws Exception {
+        MvcResult mvcResult = this.mockMvc.perform(post("/")
+                .param("firstname", "Other")
+                .param("lastname", "Student")
+                .param("emailAddress", "haifachagwey@gmail.com"))
+                .andExpect(status().isOk()).andReturn();
+        ModelAndViewAssert.assertViewName(mvcResult.getModelAndView(), "error");
+        assertEquals(1, jdbc.queryForObject("select count(*) from student", Integer.class));
+    }
+
     @Test
     @Order(2)
     public void deleteStudentHttpRequest() throws Exception {
@@ -298,7 +320,7 @@ public class GradebookControllerTest {
     @Order(9)
     public void deleteMathGradeHttpRequest() throws Exception {
         // Check that the grade exists
-        Optional<MathGrade> mathGrade = mathGradeDao.findById(1);
+        Optional<SubjectGrade> mathGrade = gradeDao.findById(new SubjectGrade.Key(Subject.MATH, 1));
         assertTrue(mathGrade.isPresent());
         MvcResult mvcResult = this.mockMvc.perform(MockMvcRequestBuilders
                 .get("/grades/{id}/{gradeType}", 1, "math"))
@@ -306,7 +328,7 @@ public class GradebookControllerTest {
         ModelAndView modelAndView = mvcResult.getModelAndView();
         ModelAndViewAssert.assertViewName(modelAndView, "studentInformation");
 
-        mathGrade = mathGradeDao.findById(1);
+        mathGrade = gradeDao.findById(new SubjectGrade.Key(Subject.MATH, 1));
         assertFalse(mathGrade.isPresent(),"Grade should not exist");
     }
 
@@ -314,7 +336,7 @@ public class GradebookControllerTest {
     @Order(9)
     public void deleteScienceGradeHttpRequest() throws Exception {
         // Check that the grade exists
-        Optional<ScienceGrade> scienceGrade = scienceGradeDao.findById(1);
+        Optional<SubjectGrade> scienceGrade = gradeDao.findById(new SubjectGrade.Key(Subject.SCIENCE, 1));
         assertTrue(scienceGrade.isPresent());
         MvcResult mvcResult = this.mockMvc.perform(MockMvcRequestBuilders
                         .get("/grades/{id}/{gradeType}", 1, "science"))
@@ -322,14 +344,14 @@ public class GradebookControllerTest {
         ModelAndView modelAndView = mvcResult.getModelAndView();
         ModelAndViewAssert.assertViewName(modelAndView, "studentInformation");
 
-        scienceGrade = scienceGradeDao.findById(1);
+        scienceGrade = gradeDao.findById(new SubjectGrade.Key(Subject.SCIENCE, 1));
         assertFalse(scienceGrade.isPresent(),"Grade should not exist");
     }
     @Test
     @Order(9)
     public void deleteHistoryGradeHttpRequest() throws Exception {
         // Check that the grade exists
-        Optional<HistoryGrade> historyGrade = historyGradeDao.findById(1);
+        Optional<SubjectGrade> historyGrade = gradeDao.findById(new SubjectGrade.Key(Subject.HISTORY, 1));
         assertTrue(historyGrade.isPresent());
         MvcResult mvcResult = this.mockMvc.perform(MockMvcRequestBuilders
                         .get("/grades/{id}/{gradeType}", 1, "history"))
@@ -337,14 +359,14 @@ public class GradebookControllerTest {
         ModelAndView modelAndView = mvcResult.getModelAndView();
         ModelAndViewAssert.assertViewName(modelAndView, "studentInformation");
 
-        historyGrade = historyGradeDao.findById(1);
+        historyGrade = gradeDao.findById(new SubjectGrade.Key(Subject.HISTORY, 1));
         assertFalse(historyGrade.isPresent(),"Grade should not exist");
     }
 
     //    The delete grade function that we have implemented should return an error page when the student does not exist
     @Test
     public void deleteGradeForNonExistentStudentHttpRequest() throws Exception {
-        Optional<MathGrade> mathGrade = mathGradeDao.findById(2);
+        Optional<SubjectGrade> mathGrade = gradeDao.findById(new SubjectGrade.Key(Subject.MATH, 2));
         // Check that grade does not exist
         assertFalse(mathGrade.isPresent());
         MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders
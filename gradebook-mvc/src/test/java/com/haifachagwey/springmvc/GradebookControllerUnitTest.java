@@ -3,7 +3,7 @@ package com.haifachagwey.springmvc;
 import com.haifachagwey.springmvc.models.Gradebook;
 import com.haifachagwey.springmvc.models.GradebookCollegeStudent;
 import com.haifachagwey.springmvc.models.StudentGrades;
-import com.haifachagwey.springmvc.repository.MathGradeDao;
+import com.haifachagwey.springmvc.repository.GradeDao;
 import com.haifachagwey.springmvc.repository.StudentDao;
 import com.haifachagwey.springmvc.service.StudentAndGradeService;
 import org.junit.jupiter.api.*;
@@ -78,7 +78,7 @@ public class GradebookControllerUnitTest {
     private StudentDao studentDao;
 
     @Autowired
-    private MathGradeDao mathGradeDao;
+    private GradeDao gradeDao;
 
     @Value("${sql.scripts.create.student}")
     private String sqlAddStudent;
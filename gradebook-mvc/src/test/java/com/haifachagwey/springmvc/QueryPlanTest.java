@@ -0,0 +1,114 @@
+package com.haifachagwey.springmvc;
+
+import com.haifachagwey.springmvc.models.Subject;
+import com.haifachagwey.springmvc.models.SubjectGrade;
+import com.haifachagwey.springmvc.repository.GradeAggregateDao;
+import com.haifachagwey.springmvc.repository.GradeDao;
+import com.haifachagwey.springmvc.repository.StudentDao;
+import com.haifachagwey.springmvc.service.StudentAndGradeService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs every keyed DAO access path against H2 in MySQL mode, then EXPLAINs each statement Hibernate sent.
+// A statement whose plan contains a table scan fails the build, so a dropped index or a query that stops
+// using one is caught here rather than on a production-sized table.
+
+@TestPropertySource(value = "/application-test.properties", properties = {
+        "spring.datasource.url=jdbc:h2:mem:plancheck;MODE=MySQL",
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector=com.haifachagwey.springmvc.RecordingStatementInspector"
+})
+@SpringBootTest
+@Transactional
+public class QueryPlanTest {
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private StudentDao studentDao;
+
+    @Autowired
+    private GradeDao gradeDao;
+
+    @Autowired
+    private GradeAggregateDao gradeAggregateDao;
+
+    @Autowired
+    private StudentAndGradeService studentAndGradeService;
+
+    @Value("${sql.scripts.create.student}")
+    private String sqlAddStudent;
+
+    @Value("${sql.scripts.create.math.grade}")
+    private String sqlAddMathGrade;
+
+    @Value("${sql.scripts.create.science.grade}")
+    private String sqlAddScienceGrade;
+
+    @Value("${sql.scripts.create.history.grade}")
+    private String sqlAddHistoryGrade;
+
+    @BeforeEach
+    public void setupDatabase() {
+        jdbc.execute(sqlAddStudent);
+        jdbc.execute(sqlAddMathGrade);
+        jdbc.execute(sqlAddScienceGrade);
+        jdbc.execute(sqlAddHistoryGrade);
+    }
+
+    @Test
+    public void keyedQueriesUseAnIndex() {
+        RecordingStatementInspector.drain();
+
+        studentDao.findById(1);
+        studentDao.findByEmailAddress("eric.roby@gmail.com");
+        studentDao.findRowsByIdGreaterThan(0, PageRequest.of(0, 10));
+        gradeDao.findGradeBySubjectAndStudentId(Subject.MATH.getCode(), 1);
+        gradeAggregateDao.findByStudentIdOrderBySubjectAsc(1);
+        gradeDao.findGradeByStudentIdBetween(1, 10);
+        gradeDao.findRowsByStudentIdBetween(1, 10);
+        gradeDao.findById(new SubjectGrade.Key(Subject.HISTORY, 1));
+        studentAndGradeService.getStudent(1);
+        studentAndGradeService.createGrade(85.00, 1, "science");
+        studentAndGradeService.deleteGrade(1, "history");
+        studentAndGradeService.deleteStudent(1);
+        entityManager.flush();
+
+        List<String> statements = RecordingStatementInspector.drain();
+        assertFalse(statements.isEmpty(), "The DAO calls should have reached the database");
+
+        List<String> scans = new ArrayList<>();
+        for (String sql : statements) {
+            String plan = explain(sql);
+            if (plan.contains("tableScan")) {
+                scans.add(sql + "\n    " + plan.replace("\n", "\n    "));
+            }
+        }
+        assertTrue(scans.isEmpty(), "These statements scan a whole table:\n" + String.join("\n", scans));
+    }
+
+    private String explain(String sql) {
+        Object[] parameters = new Object[(int) sql.chars().filter(c -> c == '?').count()];
+        // The plan does not depend on the values, only on which columns the predicates use
+        Arrays.fill(parameters, 1);
+        return String.join("\n", jdbc.queryForList("explain " + sql, String.class, parameters));
+    }
+}
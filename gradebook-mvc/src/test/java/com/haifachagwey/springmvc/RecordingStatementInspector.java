@@ -0,0 +1,27 @@
+package com.haifachagwey.springmvc;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Remembers every SQL statement Hibernate prepares so tests can look at what actually went to the database
+public class RecordingStatementInspector implements StatementInspector {
+
+    private static final List<String> statements = Collections.synchronizedList(new ArrayList<>());
+
+    @Override
+    public String inspect(String sql) {
+        statements.add(sql);
+        return sql;
+    }
+
+    public static List<String> drain() {
+        synchronized (statements) {
+            List<String> drained = new ArrayList<>(statements);
+            statements.clear();
+            return drained;
+        }
+    }
+}
@@ -1,11 +1,12 @@
 package com.haifachagwey.springmvc;
 
 import com.haifachagwey.springmvc.models.*;
-import com.haifachagwey.springmvc.repository.HistoryGradeDao;
-import com.haifachagwey.springmvc.repository.MathGradeDao;
-import com.haifachagwey.springmvc.repository.ScienceGradeDao;
+import com.haifachagwey.springmvc.repository.GradeDao;
 import com.haifachagwey.springmvc.repository.StudentDao;
+import com.haifachagwey.springmvc.service.GradeAggregateService;
 import com.haifachagwey.springmvc.service.StudentAndGradeService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -16,7 +17,10 @@ import org.springframework.test.context.jdbc.Sql;
 import org.springframework.test.context.jdbc.SqlConfig;
 import org.springframework.test.context.jdbc.SqlGroup;
 
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -39,16 +43,16 @@ public class ServiceAndGradeServiceTest {
     private StudentAndGradeService studentAndGradeService;
 
     @Autowired
-    private StudentDao studentDao;
+    private GradeAggregateService gradeAggregateService;
 
     @Autowired
-    private MathGradeDao mathGradeDao;
+    private StudentDao studentDao;
 
     @Autowired
-    private ScienceGradeDao scienceGradeDao;
+    private GradeDao gradeDao;
 
     @Autowired
-    private HistoryGradeDao historyGradeDao;
+    private EntityManagerFactory entityManagerFactory;
 
     @Value("${sql.scripts.create.student}")
     private String sqlAddStudent;
@@ -74,6 +78,9 @@ public class ServiceAndGradeServiceTest {
     @Value("${sql.scripts.delete.history.grade}")
     private String sqlDeleteHistoryStudent;
 
+    @Value("${sql.scripts.delete.grade.aggregate}")
+    private String sqlDeleteGradeAggregate;
+
     @BeforeEach
     public void setupDatabase(){
         jdbc.execute(sqlAddStudent);
@@ -96,6 +103,42 @@ public class ServiceAndGradeServiceTest {
         assertEquals(5, gradebookTest.getStudents().size());
     }
 
+    // One statement per table whatever the roster size, each row fetched once, and no entities
+    @Test
+    @Order(0)
+    public void getGradebookServiceAtScale() {
+        int numberOfStudents = 2_000;
+        int gradesPerSubject = 10;
+        List<Object[]> students = new ArrayList<>();
+        List<Object[]> grades = new ArrayList<>();
+        for (int id = 1000; id < 1000 + numberOfStudents; id++) {
+            students.add(new Object[] {id, "Student", "Number" + id, "student" + id + "@luv2code_school.com"});
+            for (int i = 0; i < gradesPerSubject; i++) {
+                grades.add(new Object[] {id, 60.00 + i});
+            }
+        }
+        jdbc.batchUpdate("insert into student(id,firstname,lastname,email_address) values (?,?,?,?)", students);
+        jdbc.batchUpdate("insert into grade(subject,student_id,grade) values (0,?,?)", grades);
+        jdbc.batchUpdate("insert into grade(subject,student_id,grade) values (1,?,?)", grades);
+        jdbc.batchUpdate("insert into grade(subject,student_id,grade) values (2,?,?)", grades);
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        statistics.clear();
+        Gradebook gradebook = studentAndGradeService.getGradebook();
+
+        assertEquals(2, statistics.getPrepareStatementCount(), "The students, then their grades in every subject");
+        long fetchedRows = 0;
+        for (String query : statistics.getQueries()) {
+            fetchedRows += statistics.getQueryStatistics(query).getExecutionRowCount();
+        }
+        assertEquals((numberOfStudents + 1) + 3L * (grades.size() + 1), fetchedRows, "Every row is fetched once");
+        assertEquals(0, statistics.getEntityLoadCount());
+        assertEquals(numberOfStudents + 1, gradebook.getStudents().size());
+        GradebookCollegeStudent last = gradebook.getStudents().get(gradebook.getStudents().size() - 1);
+        assertEquals(gradesPerSubject, last.getStudentGrades().getMathGradeResults().size());
+        assertEquals(gradesPerSubject, last.getStudentGrades().getHistoryGradeResults().size());
+    }
+
     @Test
     @Order(1)
     public void checkIfStudentExistService() {
@@ -116,9 +159,9 @@ public class ServiceAndGradeServiceTest {
     // Delete the student created during setupDatabase function (@Before each)
     public void deleteStudentService() {
         Optional<CollegeStudent> deletedCollegeStudent = studentDao.findById(1);
-        Optional<MathGrade> deletedMathGrade = mathGradeDao.findById(1);
-        Optional<ScienceGrade> deletedScienceGrade = scienceGradeDao.findById(1);
-        Optional<HistoryGrade> deletedHistoryGrade = historyGradeDao.findById(1);
+        Optional<SubjectGrade> deletedMathGrade = gradeDao.findById(new SubjectGrade.Key(Subject.MATH, 1));
+        Optional<SubjectGrade> deletedScienceGrade = gradeDao.findById(new SubjectGrade.Key(Subject.SCIENCE, 1));
+        Optional<SubjectGrade> deletedHistoryGrade = gradeDao.findById(new SubjectGrade.Key(Subject.HISTORY, 1));
 
         assertTrue(deletedCollegeStudent.isPresent(), "Should returns True");
         assertTrue(deletedMathGrade.isPresent(), "Should returns True");
@@ -128,9 +171,9 @@ public class ServiceAndGradeServiceTest {
         studentAndGradeService.deleteStudent(1);
 
         deletedCollegeStudent = studentDao.findById(1);
-        deletedMathGrade = mathGradeDao.findById(1);
-        deletedScienceGrade = scienceGradeDao.findById(1);
-        deletedHistoryGrade = historyGradeDao.findById(1);
+        deletedMathGrade = gradeDao.findById(new SubjectGrade.Key(Subject.MATH, 1));
+        deletedScienceGrade = gradeDao.findById(new SubjectGrade.Key(Subject.SCIENCE, 1));
+        deletedHistoryGrade = gradeDao.findById(new SubjectGrade.Key(Subject.HISTORY, 1));
 
         assertFalse(deletedCollegeStudent.isPresent(), "Should return false");
         assertFalse(deletedMathGrade.isPresent(),"Should return false");
@@ -169,13 +212,13 @@ public class ServiceAndGradeServiceTest {
         assertTrue(studentAndGradeService.createGrade(80.50, 1, "science"));
         assertTrue(studentAndGradeService.createGrade(80.50, 1, "history"));
         // Get grades by student i  d
-        Iterable<MathGrade> mathGrades = mathGradeDao.findGradeByStudentId(1);
-        Iterable<ScienceGrade> scienceGrades = scienceGradeDao.findGradeByStudentId(1);
-        Iterable<HistoryGrade> historyGrades = historyGradeDao.findGradeByStudentId(1);
+        Iterable<SubjectGrade> mathGrades = gradeDao.findGradeBySubjectAndStudentId(Subject.MATH.getCode(), 1);
+        Iterable<SubjectGrade> scienceGrades = gradeDao.findGradeBySubjectAndStudentId(Subject.SCIENCE.getCode(), 1);
+        Iterable<SubjectGrade> historyGrades = gradeDao.findGradeBySubjectAndStudentId(Subject.HISTORY.getCode(), 1);
         // Cast Iterable to connection this will allow us to access the size of the collection
-        assertTrue(((Collection<MathGrade>) mathGrades).size() == 2, "Student has math grades");
-        assertTrue(((Collection<ScienceGrade>) scienceGrades).size() == 2, "Student has science grades");
-        assertTrue(((Collection<HistoryGrade>) historyGrades).size() == 2, "Student has history grades");
+        assertTrue(((Collection<SubjectGrade>) mathGrades).size() == 2, "Student has math grades");
+        assertTrue(((Collection<SubjectGrade>) scienceGrades).size() == 2, "Student has science grades");
+        assertTrue(((Collection<SubjectGrade>) historyGrades).size() == 2, "Student has history grades");
     }
 
     @Test
@@ -198,6 +241,29 @@ public class ServiceAndGradeServiceTest {
         assertEquals(1, studentAndGradeService.deleteGrade(1, "history"), "Returns id after delete");
     }
 
+    @Test
+    @Order(8)
+    public void gradeAggregatesFollowCreateAndDelete() {
+        // The setupDatabase grades go straight into the tables, so they only show up once the aggregates are rebuilt
+        assertEquals(3, gradeAggregateService.verify(true).getMismatched());
+        assertTrue(studentAndGradeService.createGrade(80.50, 1, "math"));
+        assertTrue(studentAndGradeService.createGrade(70.00, 1, "math"));
+        GradeAggregate math = gradeAggregateService.findByStudentId(1).get(0);
+        assertEquals(3, math.getGradeCount());
+        assertEquals(70.00, math.getMinGrade());
+        assertEquals(83.5, math.getAverage());
+
+        assertEquals(1, studentAndGradeService.deleteGrade(1, "math"));
+        math = gradeAggregateService.findByStudentId(1).get(0);
+        assertEquals(2, math.getGradeCount());
+        assertEquals(80.50, math.getMaxGrade());
+        assertEquals(75.25, math.getAverage());
+        assertEquals(0, gradeAggregateService.verify(false).getMismatched());
+
+        studentAndGradeService.deleteStudent(1);
+        assertTrue(gradeAggregateService.findByStudentId(1).isEmpty());
+    }
+
     @Test
     @Order(9)
     public void deleteGradeForNonExistentStudentService(){
@@ -213,6 +279,7 @@ public class ServiceAndGradeServiceTest {
         jdbc.execute(sqlDeleteMathStudent);
         jdbc.execute(sqlDeleteScienceStudent);
         jdbc.execute(sqlDeleteHistoryStudent);
+        jdbc.execute(sqlDeleteGradeAggregate);
     }
 
 }
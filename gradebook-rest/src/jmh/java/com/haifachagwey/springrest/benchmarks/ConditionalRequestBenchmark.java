@@ -0,0 +1,73 @@
+package com.haifachagwey.springrest.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+// Revalidation throughput of GET / and GET /studentInformation/{id}: a plain request that gets the whole body
+// versus one carrying the current ETag in If-None-Match, answered with a 304
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class ConditionalRequestBenchmark {
+
+    @Param({"1000", "10000"})
+    public int students;
+
+    @Param({"3"})
+    public int gradesPerSubject;
+
+    @Param({"full", "revalidate"})
+    public String request;
+
+    private ConfigurableApplicationContext context;
+
+    private MockMvc mockMvc;
+
+    private String gradebookETag;
+
+    private String studentETag;
+
+    @Setup(Level.Trial)
+    public void startApplication() throws Exception {
+        context = GradebookBenchmarkSupport.startWebApplication();
+        mockMvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) context).build();
+        GradebookBenchmarkSupport.insertStudents(context.getBean(JdbcTemplate.class), 1, students, gradesPerSubject);
+        gradebookETag = mockMvc.perform(get("/")).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        studentETag = mockMvc.perform(get("/studentInformation/{id}", students / 2)).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+
+    @Benchmark
+    public int getGradebook() throws Exception {
+        return mockMvc.perform(conditional(get("/"), gradebookETag))
+                .andReturn().getResponse().getContentLength();
+    }
+
+    @Benchmark
+    public int getStudentInformation() throws Exception {
+        return mockMvc.perform(conditional(get("/studentInformation/{id}", students / 2), studentETag))
+                .andReturn().getResponse().getContentLength();
+    }
+
+    private MockHttpServletRequestBuilder conditional(MockHttpServletRequestBuilder builder, String eTag) {
+        return "revalidate".equals(request) ? builder.header(HttpHeaders.IF_NONE_MATCH, eTag) : builder;
+    }
+}
@@ -0,0 +1,66 @@
+package com.haifachagwey.springrest.benchmarks;
+
+import com.haifachagwey.springrest.service.StudentAndGradeService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+// Cost of deleteStudent as the number of grades the student owns grows
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class DeleteStudentBenchmark {
+
+    @Param({"10000"})
+    public int students;
+
+    @Param({"1", "10", "100", "1000"})
+    public int gradesPerSubject;
+
+    private ConfigurableApplicationContext context;
+
+    private StudentAndGradeService studentService;
+
+    private JdbcTemplate jdbc;
+
+    private int nextStudentId;
+
+    @Setup(Level.Trial)
+    public void startApplication() {
+        context = GradebookBenchmarkSupport.startApplication();
+        studentService = context.getBean(StudentAndGradeService.class);
+        jdbc = context.getBean(JdbcTemplate.class);
+        GradebookBenchmarkSupport.insertStudents(jdbc, 1, students, 3);
+        nextStudentId = students + 1;
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+
+    @State(Scope.Thread)
+    public static class StudentToDelete {
+
+        int id;
+
+        @Setup(Level.Invocation)
+        public void insertStudent(DeleteStudentBenchmark benchmark) {
+            synchronized (benchmark) {
+                id = benchmark.nextStudentId++;
+            }
+            GradebookBenchmarkSupport.insertStudents(benchmark.jdbc, id, 1, benchmark.gradesPerSubject);
+        }
+    }
+
+    @Benchmark
+    public void deleteStudent(StudentToDelete student) {
+        studentService.deleteStudent(student.id);
+    }
+}
@@ -0,0 +1,56 @@
+package com.haifachagwey.springrest.benchmarks;
+
+import com.haifachagwey.springrest.models.GradeSummary;
+import com.haifachagwey.springrest.service.StudentAndGradeService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// The analytics reads against H2 with 1M grades per subject at the default parameters. The per-student page
+// aggregates one id range only, so its time should not grow with the roster; the class summary scans each table.
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class GradeAnalyticsBenchmark {
+
+    @Param({"10000", "100000"})
+    public int students;
+
+    @Param({"10"})
+    public int gradesPerSubject;
+
+    private ConfigurableApplicationContext context;
+
+    private StudentAndGradeService studentService;
+
+    @Setup(Level.Trial)
+    public void startApplication() {
+        context = GradebookBenchmarkSupport.startApplication();
+        studentService = context.getBean(StudentAndGradeService.class);
+        GradebookBenchmarkSupport.insertStudents(context.getBean(JdbcTemplate.class), 1, students, gradesPerSubject);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<GradeSummary> subjectSummaries() {
+        return studentService.getSubjectSummaries();
+    }
+
+    @Benchmark
+    public List<GradeSummary> studentSummariesPage() {
+        int afterId = ThreadLocalRandom.current().nextInt(0, Math.max(1, students - StudentAndGradeService.MAX_PAGE_SIZE));
+        return studentService.getStudentSummaries("math", afterId, StudentAndGradeService.MAX_PAGE_SIZE);
+    }
+}
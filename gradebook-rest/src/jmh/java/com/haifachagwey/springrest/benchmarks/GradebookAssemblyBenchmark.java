@@ -0,0 +1,79 @@
+package com.haifachagwey.springrest.benchmarks;
+
+import com.haifachagwey.springrest.models.Grade;
+import com.haifachagwey.springrest.models.GradeRow;
+import com.haifachagwey.springrest.models.Subject;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Matching one subject's grades to the students of the gradebook, in memory and without the database:
+// the original scan of every grade for every student against the single pass getGradebook uses now
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class GradebookAssemblyBenchmark {
+
+    @Param({"1000", "10000"})
+    public int students;
+
+    @Param({"10"})
+    public int gradesPerSubject;
+
+    private int[] studentIds;
+
+    private List<GradeRow> rows;
+
+    @Setup
+    public void createRows() {
+        studentIds = new int[students];
+        rows = new ArrayList<>(students * gradesPerSubject);
+        for (int i = 0; i < students; i++) {
+            studentIds[i] = i + 1;
+            for (int j = 0; j < gradesPerSubject; j++) {
+                rows.add(new GradeRow(Subject.MATH.getCode(), rows.size() + 1, i + 1, 50.00 + (i * 7 + j * 13) % 51));
+            }
+        }
+    }
+
+    // The original implementation, kept as the baseline
+    @Benchmark
+    public void perStudentScan(Blackhole blackhole) {
+        for (int studentId : studentIds) {
+            List<Grade> grades = new ArrayList<>();
+            for (GradeRow row : rows) {
+                if (row.studentId() == studentId) {
+                    grades.add(newGrade(row));
+                }
+            }
+            blackhole.consume(grades);
+        }
+    }
+
+    // Same as StudentAndGradeService.groupGradesByStudentId followed by the lookups in buildGradebook
+    @Benchmark
+    public void singlePassGrouping(Blackhole blackhole) {
+        Map<Integer, List<Grade>> gradesByStudentId = new HashMap<>();
+        for (GradeRow row : rows) {
+            gradesByStudentId.computeIfAbsent(row.studentId(), studentId -> new ArrayList<>()).add(newGrade(row));
+        }
+        for (int studentId : studentIds) {
+            blackhole.consume(gradesByStudentId.getOrDefault(studentId, List.of()));
+        }
+    }
+
+    private static Grade newGrade(GradeRow row) {
+        Grade grade = Subject.fromCode(row.subject()).newGrade(row.grade(), row.studentId());
+        grade.setId(row.id());
+        return grade;
+    }
+}
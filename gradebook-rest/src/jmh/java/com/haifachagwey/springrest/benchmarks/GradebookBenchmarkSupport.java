@@ -0,0 +1,64 @@
+package com.haifachagwey.springrest.benchmarks;
+
+import com.haifachagwey.springrest.MvcTestingExampleApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Boots the application against the in-memory H2 test profile and fills it with synthetic students and grades
+final class GradebookBenchmarkSupport {
+
+    private static final int BATCH_SIZE = 10_000;
+
+    private GradebookBenchmarkSupport() {}
+
+    static ConfigurableApplicationContext startApplication() {
+        return new SpringApplicationBuilder(MvcTestingExampleApplication.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .run("--spring.profiles.active=test",
+                        "--spring.jpa.show-sql=false",
+                        "--spring.h2.console.enabled=false",
+                        "--logging.level.root=WARN");
+    }
+
+    // Same as startApplication, but with the servlet stack so requests can go through the controllers via MockMvc
+    static ConfigurableApplicationContext startWebApplication() {
+        return new SpringApplicationBuilder(MvcTestingExampleApplication.class)
+                .web(WebApplicationType.SERVLET)
+                .logStartupInfo(false)
+                .run("--spring.profiles.active=test",
+                        "--server.port=0",
+                        "--spring.jpa.show-sql=false",
+                        "--spring.h2.console.enabled=false",
+                        "--logging.level.root=WARN");
+    }
+
+    static void insertStudents(JdbcTemplate jdbc, int firstId, int numberOfStudents, int gradesPerSubject) {
+        List<Object[]> students = new ArrayList<>();
+        List<Object[]> grades = new ArrayList<>();
+        for (int id = firstId; id < firstId + numberOfStudents; id++) {
+            students.add(new Object[] {id, "Student", "Number" + id, "student" + id + "@luv2code_school.com"});
+            for (int i = 0; i < gradesPerSubject; i++) {
+                grades.add(new Object[] {id, 50.00 + (id * 7 + i * 13) % 51});
+            }
+            if (grades.size() >= BATCH_SIZE) {
+                flush(jdbc, students, grades);
+            }
+        }
+        flush(jdbc, students, grades);
+    }
+
+    private static void flush(JdbcTemplate jdbc, List<Object[]> students, List<Object[]> grades) {
+        jdbc.batchUpdate("insert into student(id,firstname,lastname,email_address) values (?,?,?,?)", students);
+        jdbc.batchUpdate("insert into grade(subject,student_id,grade) values (0,?,?)", grades);
+        jdbc.batchUpdate("insert into grade(subject,student_id,grade) values (1,?,?)", grades);
+        jdbc.batchUpdate("insert into grade(subject,student_id,grade) values (2,?,?)", grades);
+        students.clear();
+        grades.clear();
+    }
+}
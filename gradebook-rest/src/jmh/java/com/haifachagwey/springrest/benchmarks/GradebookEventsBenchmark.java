@@ -0,0 +1,95 @@
+package com.haifachagwey.springrest.benchmarks;
+
+import com.haifachagwey.springrest.models.GradebookChange;
+import com.haifachagwey.springrest.models.Subject;
+import com.haifachagwey.springrest.service.GradebookEventBroadcaster;
+import com.haifachagwey.springrest.service.StudentAndGradeService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// Server-Sent Events fan-out: time from a grade write (or a bare publish) until every subscriber's connection has
+// been handed the event, and the heap each subscriber keeps, printed at setup. The subscribers' connections are
+// stand-ins that return at once, so the figures leave out the servlet container's per-connection cost.
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class GradebookEventsBenchmark {
+
+    @Param({"1000", "10000"})
+    public int subscribers;
+
+    private ConfigurableApplicationContext context;
+
+    private StudentAndGradeService studentService;
+
+    private GradebookEventBroadcaster broadcaster;
+
+    private volatile CountDownLatch delivered;
+
+    private long version;
+
+    @Setup(Level.Trial)
+    public void startApplication() {
+        context = GradebookBenchmarkSupport.startApplication();
+        GradebookBenchmarkSupport.insertStudents(context.getBean(JdbcTemplate.class), 1, 1, 1);
+        studentService = context.getBean(StudentAndGradeService.class);
+        broadcaster = context.getBean(GradebookEventBroadcaster.class);
+
+        long before = usedHeap();
+        for (int i = 0; i < subscribers; i++) {
+            broadcaster.subscribe(i % 2 == 0 ? null : 1, new CountingEmitter());
+        }
+        long after = usedHeap();
+        System.out.printf("%n%d subscribers retain about %d bytes each%n", subscribers, (after - before) / subscribers);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+
+    @Benchmark
+    public boolean createGradeToDelivery() throws InterruptedException {
+        delivered = new CountDownLatch(subscribers);
+        studentService.createGrade(75.00, 1, "math");
+        return delivered.await(1, TimeUnit.MINUTES);
+    }
+
+    @Benchmark
+    public boolean publishToDelivery() throws InterruptedException {
+        delivered = new CountDownLatch(subscribers);
+        GradebookChange change = GradebookChange.gradeCreated(Subject.MATH, 1, 1, 75.00);
+        change.setVersion(++version);
+        broadcaster.publish(List.of(change));
+        return delivered.await(1, TimeUnit.MINUTES);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private class CountingEmitter extends SseEmitter {
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            // Heartbeats are a lone comment; events carry their data as a separate part
+            if (builder.build().size() > 1) {
+                delivered.countDown();
+            }
+        }
+    }
+}
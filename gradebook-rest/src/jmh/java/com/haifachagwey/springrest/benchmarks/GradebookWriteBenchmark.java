@@ -0,0 +1,100 @@
+package com.haifachagwey.springrest.benchmarks;
+
+import com.haifachagwey.springrest.service.StudentAndGradeService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+// Write throughput of POST / and DELETE /student/{id}, with the full gradebook in the response versus "Prefer: return=minimal"
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class GradebookWriteBenchmark {
+
+    @Param({"1000", "10000"})
+    public int students;
+
+    @Param({"3"})
+    public int gradesPerSubject;
+
+    @Param({"full", "minimal"})
+    public String response;
+
+    private ConfigurableApplicationContext context;
+
+    private MockMvc mockMvc;
+
+    private JdbcTemplate jdbc;
+
+    private StudentAndGradeService studentService;
+
+    private int nextEmail;
+
+    @Setup(Level.Trial)
+    public void startApplication() {
+        context = GradebookBenchmarkSupport.startWebApplication();
+        mockMvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) context).build();
+        jdbc = context.getBean(JdbcTemplate.class);
+        GradebookBenchmarkSupport.insertStudents(jdbc, 1, students, gradesPerSubject);
+        studentService = context.getBean(StudentAndGradeService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+
+    @State(Scope.Thread)
+    public static class StudentToDelete {
+
+        int id;
+
+        @Setup(Level.Invocation)
+        public void insertStudent(GradebookWriteBenchmark benchmark) {
+            // Go through the service so the id comes from the same identity column POST / uses
+            id = benchmark.studentService.createStudent("Student", "ToDelete", "delete" + benchmark.nextEmail() + "@luv2code_school.com");
+            for (int i = 0; i < benchmark.gradesPerSubject; i++) {
+                for (String gradeType : new String[] {"math", "science", "history"}) {
+                    benchmark.studentService.createGrade(50.00 + i, id, gradeType);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public int createStudent() throws Exception {
+        return mockMvc.perform(prefer(post("/"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"firstname\":\"Bench\",\"lastname\":\"Mark\",\"emailAddress\":\"bench" + nextEmail() + "@luv2code_school.com\"}"))
+                .andReturn().getResponse().getContentLength();
+    }
+
+    @Benchmark
+    public int deleteStudent(StudentToDelete student) throws Exception {
+        return mockMvc.perform(prefer(delete("/student/{id}", student.id)))
+                .andReturn().getResponse().getContentLength();
+    }
+
+    // Email addresses are unique, so every student this benchmark creates needs its own
+    private synchronized int nextEmail() {
+        return nextEmail++;
+    }
+
+    private MockHttpServletRequestBuilder prefer(MockHttpServletRequestBuilder request) {
+        return "minimal".equals(response) ? request.header("Prefer", "return=minimal") : request;
+    }
+}
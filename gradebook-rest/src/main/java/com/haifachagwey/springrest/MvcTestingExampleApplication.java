@@ -1,13 +1,16 @@
 package com.haifachagwey.springrest;
 
 import com.haifachagwey.springrest.models.*;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Scope;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableCaching
+@EnableScheduling
 public class MvcTestingExampleApplication {
 
 	public static void main(String[] args) {
@@ -23,28 +26,7 @@ public class MvcTestingExampleApplication {
 	@Bean
 	@Scope(value = "prototype")
     Grade getMathGrade(double grade) {
-		return new MathGrade(grade);
-	}
-
-	@Bean
-	@Scope(value = "prototype")
-	@Qualifier("mathGrades")
-	MathGrade getGrade() {
-		return new MathGrade();
-	}
-
-	@Bean
-	@Scope(value = "prototype")
-	@Qualifier("scienceGrades")
-    ScienceGrade getScienceGrade() {
-		return new ScienceGrade();
-	}
-
-	@Bean
-	@Scope(value = "prototype")
-	@Qualifier("historyGrades")
-    HistoryGrade getHistoryGrade() {
-		return new HistoryGrade();
+		return new SubjectGrade(Subject.MATH, grade);
 	}
 
 }
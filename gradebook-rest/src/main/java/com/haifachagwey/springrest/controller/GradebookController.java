@@ -1,66 +1,346 @@
 package com.haifachagwey.springrest.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.haifachagwey.springrest.exceptionhandling.ChangeVersionExpiredException;
+import com.haifachagwey.springrest.exceptionhandling.StudentAlreadyExistsException;
 import com.haifachagwey.springrest.exceptionhandling.StudentOrGradeErrorResponse;
 import com.haifachagwey.springrest.exceptionhandling.StudentOrGradeNotFoundException;
 import com.haifachagwey.springrest.models.CollegeStudent;
+import com.haifachagwey.springrest.models.GradeAggregate;
+import com.haifachagwey.springrest.models.GradeAggregateReport;
+import com.haifachagwey.springrest.models.GradeBatchResult;
+import com.haifachagwey.springrest.models.GradeDistribution;
+import com.haifachagwey.springrest.models.GradeSummary;
+import com.haifachagwey.springrest.models.GradeSubmission;
 import com.haifachagwey.springrest.models.Gradebook;
+import com.haifachagwey.springrest.models.GradebookChanges;
 import com.haifachagwey.springrest.models.GradebookCollegeStudent;
+import com.haifachagwey.springrest.models.StudentImportResult;
+import com.haifachagwey.springrest.models.StudentRank;
+import com.haifachagwey.springrest.models.Subject;
+import com.haifachagwey.springrest.service.GradeAggregateService;
+import com.haifachagwey.springrest.service.GradeRankingService;
+import com.haifachagwey.springrest.service.GradeStatisticsService;
+import com.haifachagwey.springrest.service.GradebookCache;
+import com.haifachagwey.springrest.service.GradebookChangeLog;
+import com.haifachagwey.springrest.service.GradebookEventBroadcaster;
+import com.haifachagwey.springrest.service.GradebookReadModel;
+import com.haifachagwey.springrest.service.GradebookVersions;
 import com.haifachagwey.springrest.service.StudentAndGradeService;
+import com.haifachagwey.springrest.service.StudentImportService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 @RestController
 public class GradebookController {
 
+    private static final String EXPORT_TIMEOUT = "exportTimeout";
+
     @Autowired
     private StudentAndGradeService studentService;
 
     @Autowired
-    private Gradebook gradebook;
+    private StudentImportService studentImportService;
+
+    @Autowired
+    private GradeAggregateService gradeAggregateService;
+
+    @Autowired
+    private GradeStatisticsService gradeStatisticsService;
+
+    @Autowired
+    private GradeRankingService gradeRankingService;
+
+    @Autowired
+    private GradebookReadModel gradebookReadModel;
 
+    @Autowired
+    private GradebookChangeLog gradebookChangeLog;
+
+    @Autowired
+    private GradebookEventBroadcaster gradebookEventBroadcaster;
+
+    @Autowired
+    private GradebookVersions gradebookVersions;
+
+    @Autowired
+    private GradebookCache gradebookCache;
+
+    @Autowired
+    private ObjectMapper objectMapper;
 
+    // The export and the event streams outlive the default async request timeout, so each sets its own
+    @Value("${gradebook.export.timeout-ms:1800000}")
+    private long exportTimeoutMillis;
+
+    @Value("${gradebook.events.subscription-timeout-ms:1800000}")
+    private long subscriptionTimeoutMillis;
+
+    // RFC 7240: a client that sends "Prefer: return=minimal" gets a bare 201/204 instead of the whole gradebook
+    private static final String PREFER = "Prefer";
+
+    private static final String PREFERENCE_APPLIED = "Preference-Applied";
+
+    private static final String RETURN_MINIMAL = "return=minimal";
+
+
+    // A client revalidating with If-None-Match gets a 304 straight from the in-memory version, before any query runs
     @RequestMapping(value = "/", method = RequestMethod.GET)
-    public List<GradebookCollegeStudent> getGradebook() {
-        gradebook = studentService.getGradebook();
-        return gradebook.getStudents();
+    public ResponseEntity<List<GradebookCollegeStudent>> getGradebook(@RequestParam(value = "after", required = false) Integer after,
+                                                                      @RequestParam(value = "limit", required = false) Integer limit,
+                                                                      WebRequest request) {
+        long version = gradebookVersions.getGradebookVersion();
+        String eTag = gradebookVersions.gradebookETag(version);
+        if (matchesIfNoneMatch(request, eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
+        return gradebookResponse(after, limit, version);
+    }
+
+
+    // Nightly export: one student per line, written while the database cursors are still being read
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportGradebook(WebRequest request) {
+        // A StreamingResponseBody carries no timeout, so it is put on the request just before the stream starts
+        WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(EXPORT_TIMEOUT, new CallableProcessingInterceptor() {
+            @Override
+            public <T> void beforeConcurrentHandling(NativeWebRequest asyncRequest, Callable<T> task) {
+                if (asyncRequest instanceof AsyncWebRequest asyncWebRequest) {
+                    asyncWebRequest.setTimeout(exportTimeoutMillis);
+                }
+            }
+        });
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                studentService.exportGradebook(student -> {
+                    try {
+                        generator.writeObject(student);
+                        generator.writeRaw('\n');
+                    } catch (IOException exc) {
+                        throw new UncheckedIOException(exc);
+                    }
+                });
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+
+    // Delta sync for pollers: the writes committed after ?since=<version>, oldest first. Without since only the
+    // current version comes back; a new client reads it, loads GET / and polls from there. A 410 means the client
+    // is too far behind to catch up and has to load GET / again.
+    @GetMapping("/changes")
+    public GradebookChanges getChanges(@RequestParam(value = "since", required = false) Long since,
+                                       @RequestParam(value = "limit", required = false) Integer limit) {
+
+        GradebookChanges changes = gradebookChangeLog.changesSince(since, limit == null ? GradebookChangeLog.DEFAULT_LIMIT : limit);
+
+        if (changes == null) {
+            throw new ChangeVersionExpiredException("Changes since version " + since + " are no longer available");
+        }
+
+        return changes;
+    }
+
+
+    // Every committed write as a Server-Sent Event, in place of polling /changes. Each event's id is its change
+    // feed version, so a client that reconnects catches up with GET /changes?since=<Last-Event-ID>.
+    @GetMapping("/events")
+    public SseEmitter subscribeToGradebook() {
+
+        SseEmitter emitter = new SseEmitter(subscriptionTimeoutMillis);
+        gradebookEventBroadcaster.subscribe(null, emitter);
+        return emitter;
+    }
+
+
+    @GetMapping("/studentInformation/{id}/events")
+    public SseEmitter subscribeToStudent(@PathVariable int id) {
+
+        if (!studentService.checkIfStudentExists(id)) {
+            throw new StudentOrGradeNotFoundException("Student or Grade was not found");
+        }
+
+        SseEmitter emitter = new SseEmitter(subscriptionTimeoutMillis);
+        gradebookEventBroadcaster.subscribe(id, emitter);
+        return emitter;
     }
 
 
     @GetMapping("/studentInformation/{id}")
-    public GradebookCollegeStudent studentInformation(@PathVariable int id) {
+    public ResponseEntity<GradebookCollegeStudent> studentInformation(@PathVariable int id, WebRequest request) {
+
+        String eTag = gradebookVersions.getStudentETag(id);
+        if (matchesIfNoneMatch(request, eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
+
+        // Clients that ask for the same student at the same moment share one lookup
+        GradebookCache.Versioned<GradebookCollegeStudent> studentEntity = gradebookCache.studentInformation(id,
+                () -> studentService.studentInformation(id));
+
+        if (studentEntity == null) {
+            throw new StudentOrGradeNotFoundException("Student or Grade was not found");
+        }
+
+        // Tagged with the version the body was loaded at, which may be older than the one checked above
+        return ResponseEntity.ok().eTag(gradebookVersions.studentETag(id, studentEntity.version())).body(studentEntity.value());
+    }
+
+
+    // Sum, count, min, max and average per subject, read from the maintained aggregates without touching the grades
+    @GetMapping("/studentInformation/{id}/averages")
+    public List<GradeAggregate> studentAverages(@PathVariable int id) {
 
         if (!studentService.checkIfStudentExists(id)) {
             throw new StudentOrGradeNotFoundException("Student or Grade was not found");
         }
-        GradebookCollegeStudent studentEntity = studentService.studentInformation(id);
 
-        return studentEntity;
+        return gradeAggregateService.findByStudentId(id);
+    }
+
+
+    @GetMapping("/aggregates/verify")
+    public GradeAggregateReport verifyAggregates() {
+        return gradeAggregateService.verify(false);
+    }
+
+
+    @PostMapping("/aggregates/rebuild")
+    public GradeAggregateReport rebuildAggregates() {
+        return gradeAggregateService.verify(true);
+    }
+
+
+    // Count, average, min and max of every subject across the whole class
+    @GetMapping("/analytics")
+    public List<GradeSummary> getSubjectSummaries() {
+        return studentService.getSubjectSummaries();
+    }
+
+
+    // The same figures per student in one subject, a keyset page at a time, with a Link header to the next page
+    @GetMapping("/analytics/{gradeType}")
+    public ResponseEntity<List<GradeSummary>> getStudentSummaries(@PathVariable String gradeType,
+                                                                  @RequestParam(value = "after", required = false) Integer after,
+                                                                  @RequestParam(value = "limit", required = false) Integer limit) {
+
+        int pageSize = Math.max(1, Math.min(limit == null ? StudentAndGradeService.DEFAULT_PAGE_SIZE : limit, StudentAndGradeService.MAX_PAGE_SIZE));
+        List<GradeSummary> summaries = studentService.getStudentSummaries(gradeType, after == null ? 0 : after, pageSize);
+
+        if (summaries == null) {
+            throw new StudentOrGradeNotFoundException("Student or Grade was not found");
+        }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (summaries.size() == pageSize) {
+            String next = ServletUriComponentsBuilder.fromCurrentContextPath().path("/analytics/{gradeType}")
+                    .queryParam("after", summaries.get(summaries.size() - 1).getStudentId())
+                    .queryParam("limit", pageSize)
+                    .buildAndExpand(gradeType)
+                    .toUriString();
+            response.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        return response.body(summaries);
+    }
+
+
+    // Median, p10/p90 and a histogram of ?buckets= equal-width buckets, served from memory
+    @GetMapping("/statistics/{gradeType}")
+    public GradeDistribution getGradeDistribution(@PathVariable String gradeType,
+                                                  @RequestParam(value = "buckets", required = false) Integer buckets) {
+
+        return gradeStatisticsService.getDistribution(subjectOf(gradeType), buckets == null ? GradeStatisticsService.DEFAULT_BUCKETS : buckets);
+    }
+
+
+    // The best ?limit= students by average in one subject, best first
+    @GetMapping("/rankings/{gradeType}")
+    public List<StudentRank> getTopStudents(@PathVariable String gradeType,
+                                            @RequestParam(value = "limit", required = false) Integer limit) {
+
+        return gradeRankingService.getTopStudents(subjectOf(gradeType), limit == null ? GradeRankingService.DEFAULT_TOP : limit);
+    }
+
+
+    @GetMapping("/rankings/{gradeType}/{studentId}")
+    public StudentRank getStudentRank(@PathVariable String gradeType, @PathVariable int studentId) {
+
+        StudentRank rank = gradeRankingService.getRank(subjectOf(gradeType), studentId);
+
+        if (rank == null) {
+            throw new StudentOrGradeNotFoundException("Student or Grade was not found");
+        }
+
+        return rank;
     }
 
 
     @PostMapping(value = "/")
-    public List<GradebookCollegeStudent> createStudent(@RequestBody CollegeStudent student) {
+    public ResponseEntity<List<GradebookCollegeStudent>> createStudent(@RequestBody CollegeStudent student,
+                                                                       @RequestParam(value = "after", required = false) Integer after,
+                                                                       @RequestParam(value = "limit", required = false) Integer limit,
+                                                                       @RequestHeader(value = PREFER, required = false) String prefer) {
+
+        int id = studentService.createStudent(student.getFirstname(), student.getLastname(), student.getEmailAddress());
+
+        if (prefersMinimalReturn(prefer)) {
+            return ResponseEntity.created(ServletUriComponentsBuilder.fromCurrentContextPath()
+                            .path("/studentInformation/{id}").buildAndExpand(id).toUri())
+                    .header(PREFERENCE_APPLIED, RETURN_MINIMAL)
+                    .build();
+        }
+        return gradebookResponse(after, limit, null);
+    }
+
 
-        studentService.createStudent(student.getFirstname(), student.getLastname(), student.getEmailAddress());
-        gradebook = studentService.getGradebook();
-        return gradebook.getStudents();
+    // Bulk import from a text/csv or application/x-ndjson upload, read as it arrives rather than buffered whole
+    @PostMapping(value = "/students/import", consumes = {"text/csv", MediaType.APPLICATION_NDJSON_VALUE})
+    public StudentImportResult importStudents(InputStream body,
+                                              @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+                                              @RequestParam(value = "chunkSize", required = false) Integer chunkSize) throws IOException {
+
+        return studentImportService.importStudents(body, contentType, chunkSize);
     }
 
 
     @DeleteMapping("/student/{id}")
-    public List<GradebookCollegeStudent> deleteStudent(@PathVariable int id) {
+    public ResponseEntity<List<GradebookCollegeStudent>> deleteStudent(@PathVariable int id,
+                                                                       @RequestParam(value = "after", required = false) Integer after,
+                                                                       @RequestParam(value = "limit", required = false) Integer limit,
+                                                                       @RequestHeader(value = PREFER, required = false) String prefer) {
 
         if (!studentService.checkIfStudentExists(id)) {
             throw new StudentOrGradeNotFoundException("Student or Grade was not found");
         }
 
         studentService.deleteStudent(id);
-        gradebook = studentService.getGradebook();
-        return gradebook.getStudents();
+
+        if (prefersMinimalReturn(prefer)) {
+            return ResponseEntity.noContent().header(PREFERENCE_APPLIED, RETURN_MINIMAL).build();
+        }
+        return gradebookResponse(after, limit, null);
     }
 
 
@@ -88,6 +368,13 @@ public class GradebookController {
         return studentEntity;
     }
 
+    // Bulk upload after an exam: a JSON array of {grade, gradeType, studentId}, answered with a per-row summary
+    @PostMapping(value = "/grades/batch")
+    public GradeBatchResult createGrades(@RequestBody List<GradeSubmission> grades) {
+
+        return studentService.createGrades(grades);
+    }
+
     @DeleteMapping("/grades/{id}/{gradeType}")
     public GradebookCollegeStudent deleteGrade(@PathVariable int id, @PathVariable String gradeType) {
 
@@ -102,6 +389,88 @@ public class GradebookController {
         return studentEntity;
     }
 
+    // The whole gradebook, served from the in-memory read model once it is built, unless the client asks for a
+    // keyset page with ?after=<id>&limit=<n>. A full page carries a Link header pointing at the next one.
+    // The ETag comes from the given version, read before the data, and is left off when that is null.
+    private ResponseEntity<List<GradebookCollegeStudent>> gradebookResponse(Integer after, Integer limit, Long version) {
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+
+        if (after == null && limit == null) {
+            List<GradebookCollegeStudent> students = gradebookReadModel.getStudents();
+            if (students == null) {
+                GradebookCache.Versioned<Gradebook> gradebook = gradebookCache.gradebook(studentService::getGradebook);
+                students = gradebook.value().getStudents();
+                version = version == null ? null : gradebook.version();
+            }
+            if (version != null) {
+                response.eTag(gradebookVersions.gradebookETag(version));
+            }
+            return response.body(students);
+        }
+
+        if (version != null) {
+            response.eTag(gradebookVersions.gradebookETag(version));
+        }
+
+        int pageSize = Math.max(1, Math.min(limit == null ? StudentAndGradeService.DEFAULT_PAGE_SIZE : limit, StudentAndGradeService.MAX_PAGE_SIZE));
+        List<GradebookCollegeStudent> students = studentService.getGradebookPage(after == null ? 0 : after, pageSize).getStudents();
+
+        if (students.size() == pageSize) {
+            String next = ServletUriComponentsBuilder.fromCurrentContextPath().path("/")
+                    .queryParam("after", students.get(students.size() - 1).getId())
+                    .queryParam("limit", pageSize)
+                    .toUriString();
+            response.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        return response.body(students);
+    }
+
+    // WebRequest.checkNotModified would also put the ETag on whatever response follows, a 404 included
+    private static boolean matchesIfNoneMatch(WebRequest request, String eTag) {
+
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Subject subjectOf(String gradeType) {
+
+        Subject subject = Subject.fromGradeType(gradeType);
+
+        if (subject == null) {
+            throw new StudentOrGradeNotFoundException("Student or Grade was not found");
+        }
+        return subject;
+    }
+
+    // Prefer may carry several comma-separated preferences, each possibly with parameters
+    private static boolean prefersMinimalReturn(String prefer) {
+
+        if (prefer == null) {
+            return false;
+        }
+        for (String preference : prefer.split(",")) {
+            String token = preference.split(";", 2)[0].trim();
+            if (token.replace(" ", "").equalsIgnoreCase(RETURN_MINIMAL)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @ExceptionHandler
     public ResponseEntity<StudentOrGradeErrorResponse> handleException(StudentOrGradeNotFoundException exc) {
 
@@ -114,6 +483,30 @@ public class GradebookController {
         return new ResponseEntity<>(error, HttpStatus.NOT_FOUND);
     }
 
+    @ExceptionHandler
+    public ResponseEntity<StudentOrGradeErrorResponse> handleException(StudentAlreadyExistsException exc) {
+
+        StudentOrGradeErrorResponse error = new StudentOrGradeErrorResponse();
+
+        error.setStatus(HttpStatus.CONFLICT.value());
+        error.setMessage(exc.getMessage());
+        error.setTimeStamp(System.currentTimeMillis());
+
+        return new ResponseEntity<>(error, HttpStatus.CONFLICT);
+    }
+
+    @ExceptionHandler
+    public ResponseEntity<StudentOrGradeErrorResponse> handleException(ChangeVersionExpiredException exc) {
+
+        StudentOrGradeErrorResponse error = new StudentOrGradeErrorResponse();
+
+        error.setStatus(HttpStatus.GONE.value());
+        error.setMessage(exc.getMessage());
+        error.setTimeStamp(System.currentTimeMillis());
+
+        return new ResponseEntity<>(error, HttpStatus.GONE);
+    }
+
     @ExceptionHandler
     public ResponseEntity<StudentOrGradeErrorResponse> handleException(Exception exc) {
 
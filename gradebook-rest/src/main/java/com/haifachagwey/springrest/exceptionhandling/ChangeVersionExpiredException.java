@@ -0,0 +1,17 @@
+package com.haifachagwey.springrest.exceptionhandling;
+
+// The client's change feed version can no longer be caught up from and it has to reload the whole gradebook
+public class ChangeVersionExpiredException extends RuntimeException {
+
+    public ChangeVersionExpiredException(String message) {
+        super(message);
+    }
+
+    public ChangeVersionExpiredException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public ChangeVersionExpiredException(Throwable cause) {
+        super(cause);
+    }
+}
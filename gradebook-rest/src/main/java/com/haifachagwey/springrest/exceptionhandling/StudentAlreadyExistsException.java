@@ -0,0 +1,17 @@
+package com.haifachagwey.springrest.exceptionhandling;
+
+// Another student already has the email address, which uk_student_email_address keeps unique
+public class StudentAlreadyExistsException extends RuntimeException {
+
+    public StudentAlreadyExistsException(String message) {
+        super(message);
+    }
+
+    public StudentAlreadyExistsException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public StudentAlreadyExistsException(Throwable cause) {
+        super(cause);
+    }
+}
@@ -0,0 +1,108 @@
+package com.haifachagwey.springrest.models;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Students ordered by one subject's average, which is a hundredth-resolution value between 0 and 100. A Fenwick
+ * tree over those 10,001 values counts the students at or below each one, so a rank costs O(log 10,001). A sorted
+ * map of the occupied values gives the top K in O(log n + K). Ties share a rank (1, 2, 2, 4).
+ */
+public final class AverageRanking {
+
+    private static final int SIZE = 100 * GradeHistogram.RESOLUTION + 1;
+
+    // 1-based: value v is counted at tree[v + 1]
+    private final int[] tree = new int[SIZE + 1];
+
+    private final Map<Integer, Integer> valueByStudentId = new HashMap<>();
+
+    private final NavigableMap<Integer, NavigableSet<Integer>> studentIdsByValue = new TreeMap<>();
+
+    public synchronized void put(int studentId, double average) {
+        int value = GradeHistogram.index(average);
+        Integer previous = valueByStudentId.put(studentId, value);
+        if (previous != null) {
+            if (previous == value) {
+                return;
+            }
+            unlink(studentId, previous);
+        }
+        studentIdsByValue.computeIfAbsent(value, v -> new TreeSet<>()).add(studentId);
+        update(value, 1);
+    }
+
+    public synchronized void remove(int studentId) {
+        Integer previous = valueByStudentId.remove(studentId);
+        if (previous != null) {
+            unlink(studentId, previous);
+        }
+    }
+
+    public synchronized int size() {
+        return valueByStudentId.size();
+    }
+
+    // Null if the student has no average in this subject
+    public synchronized StudentRank rankOf(int studentId) {
+        Integer value = valueByStudentId.get(studentId);
+        if (value == null) {
+            return null;
+        }
+        return new StudentRank(studentId, 1 + countAbove(value), toAverage(value), valueByStudentId.size());
+    }
+
+    // Best average first; students on the same average come in id order
+    public synchronized List<StudentRank> top(int limit) {
+        List<StudentRank> top = new ArrayList<>(Math.min(limit, valueByStudentId.size()));
+        int above = 0;
+        for (Map.Entry<Integer, NavigableSet<Integer>> entry : studentIdsByValue.descendingMap().entrySet()) {
+            for (Integer studentId : entry.getValue()) {
+                if (top.size() == limit) {
+                    return top;
+                }
+                top.add(new StudentRank(studentId, 1 + above, toAverage(entry.getKey()), valueByStudentId.size()));
+            }
+            above += entry.getValue().size();
+        }
+        return top;
+    }
+
+    private void unlink(int studentId, int value) {
+        NavigableSet<Integer> studentIds = studentIdsByValue.get(value);
+        studentIds.remove(studentId);
+        if (studentIds.isEmpty()) {
+            studentIdsByValue.remove(value);
+        }
+        update(value, -1);
+    }
+
+    private void update(int value, int delta) {
+        for (int i = value + 1; i <= SIZE; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    // Students whose average is at or below value
+    private int countAtOrBelow(int value) {
+        int count = 0;
+        for (int i = value + 1; i > 0; i -= i & -i) {
+            count += tree[i];
+        }
+        return count;
+    }
+
+    private int countAbove(int value) {
+        return valueByStudentId.size() - countAtOrBelow(value);
+    }
+
+    private static double toAverage(int value) {
+        return value / (double) GradeHistogram.RESOLUTION;
+    }
+}
@@ -0,0 +1,41 @@
+package com.haifachagwey.springrest.models;
+
+// What a consistency check of grade_aggregate against the grade table found, and whether it rebuilt the table
+public class GradeAggregateReport {
+
+    private int checked;
+    private int mismatched;
+    private boolean rebuilt;
+
+    public GradeAggregateReport() {}
+
+    public GradeAggregateReport(int checked, int mismatched, boolean rebuilt) {
+        this.checked = checked;
+        this.mismatched = mismatched;
+        this.rebuilt = rebuilt;
+    }
+
+    public int getChecked() {
+        return checked;
+    }
+
+    public void setChecked(int checked) {
+        this.checked = checked;
+    }
+
+    public int getMismatched() {
+        return mismatched;
+    }
+
+    public void setMismatched(int mismatched) {
+        this.mismatched = mismatched;
+    }
+
+    public boolean isRebuilt() {
+        return rebuilt;
+    }
+
+    public void setRebuilt(boolean rebuilt) {
+        this.rebuilt = rebuilt;
+    }
+}
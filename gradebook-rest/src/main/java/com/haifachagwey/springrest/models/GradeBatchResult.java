@@ -0,0 +1,63 @@
+package com.haifachagwey.springrest.models;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Outcome of a bulk grade upload: how many rows went in, and which ones did not and why
+public class GradeBatchResult {
+
+    private int accepted;
+    private List<RejectedGrade> rejected = new ArrayList<>();
+
+    public GradeBatchResult() {}
+
+    public int getAccepted() {
+        return accepted;
+    }
+
+    public void setAccepted(int accepted) {
+        this.accepted = accepted;
+    }
+
+    public List<RejectedGrade> getRejected() {
+        return rejected;
+    }
+
+    public void setRejected(List<RejectedGrade> rejected) {
+        this.rejected = rejected;
+    }
+
+    public void reject(int row, String reason) {
+        rejected.add(new RejectedGrade(row, reason));
+    }
+
+    public static class RejectedGrade {
+
+        // Zero-based position of the row in the request
+        private int row;
+        private String reason;
+
+        public RejectedGrade() {}
+
+        public RejectedGrade(int row, String reason) {
+            this.row = row;
+            this.reason = reason;
+        }
+
+        public int getRow() {
+            return row;
+        }
+
+        public void setRow(int row) {
+            this.row = row;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        public void setReason(String reason) {
+            this.reason = reason;
+        }
+    }
+}
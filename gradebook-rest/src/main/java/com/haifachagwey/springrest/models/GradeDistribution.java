@@ -0,0 +1,139 @@
+package com.haifachagwey.springrest.models;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Class-wide spread of one subject's grades, as served by GET /statistics/{gradeType}
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class GradeDistribution {
+
+    private String gradeType;
+    private long count;
+    private Double minGrade;
+    private Double maxGrade;
+    private Double mean;
+    private Double p10;
+    private Double median;
+    private Double p90;
+    private List<Bucket> histogram = new ArrayList<>();
+
+    public GradeDistribution() {}
+
+    public GradeDistribution(String gradeType) {
+        this.gradeType = gradeType;
+    }
+
+    public String getGradeType() {
+        return gradeType;
+    }
+
+    public void setGradeType(String gradeType) {
+        this.gradeType = gradeType;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public Double getMinGrade() {
+        return minGrade;
+    }
+
+    public void setMinGrade(Double minGrade) {
+        this.minGrade = minGrade;
+    }
+
+    public Double getMaxGrade() {
+        return maxGrade;
+    }
+
+    public void setMaxGrade(Double maxGrade) {
+        this.maxGrade = maxGrade;
+    }
+
+    public Double getMean() {
+        return mean;
+    }
+
+    public void setMean(Double mean) {
+        this.mean = mean;
+    }
+
+    public Double getP10() {
+        return p10;
+    }
+
+    public void setP10(Double p10) {
+        this.p10 = p10;
+    }
+
+    public Double getMedian() {
+        return median;
+    }
+
+    public void setMedian(Double median) {
+        this.median = median;
+    }
+
+    public Double getP90() {
+        return p90;
+    }
+
+    public void setP90(Double p90) {
+        this.p90 = p90;
+    }
+
+    public List<Bucket> getHistogram() {
+        return histogram;
+    }
+
+    public void setHistogram(List<Bucket> histogram) {
+        this.histogram = histogram;
+    }
+
+    // Grades from "from" up to but excluding "to"; the last bucket also takes 100
+    public static class Bucket {
+
+        private double from;
+        private double to;
+        private long count;
+
+        public Bucket() {}
+
+        public Bucket(double from, double to, long count) {
+            this.from = from;
+            this.to = to;
+            this.count = count;
+        }
+
+        public double getFrom() {
+            return from;
+        }
+
+        public void setFrom(double from) {
+            this.from = from;
+        }
+
+        public double getTo() {
+            return to;
+        }
+
+        public void setTo(double to) {
+            this.to = to;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public void setCount(long count) {
+            this.count = count;
+        }
+    }
+}
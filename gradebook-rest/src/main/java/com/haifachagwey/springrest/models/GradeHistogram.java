@@ -0,0 +1,111 @@
+package com.haifachagwey.springrest.models;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count of grades at every hundredth of a point from 0.00 to 100.00, in the same 80 KB however many grades
+ * there are. A finer grade is counted at the nearest hundredth, and one outside 0-100 at the nearer end. Two
+ * histograms merge by adding their counts. Updates are lock-free and safe from any thread.
+ */
+public final class GradeHistogram {
+
+    public static final int RESOLUTION = 100;
+
+    private static final int SIZE = 100 * RESOLUTION + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(SIZE);
+
+    public void add(double grade) {
+        counts.incrementAndGet(index(grade));
+    }
+
+    public void remove(double grade) {
+        counts.decrementAndGet(index(grade));
+    }
+
+    public void add(int hundredths, long count) {
+        counts.addAndGet(hundredths, count);
+    }
+
+    public void merge(GradeHistogram other) {
+        for (int i = 0; i < SIZE; i++) {
+            long count = other.counts.get(i);
+            if (count != 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+    }
+
+    // A copy to compute from while writers carry on. Removing a grade this histogram never saw, such as one the
+    // MVC app wrote since the last rebuild, can leave a bucket negative until the next rebuild; it counts as empty.
+    public long[] snapshot() {
+        long[] snapshot = new long[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            snapshot[i] = Math.max(0, counts.get(i));
+        }
+        return snapshot;
+    }
+
+    // Count, extremes, mean, p10/median/p90 and a histogram of equal-width buckets over 0-100
+    public GradeDistribution describe(String gradeType, int buckets) {
+        long[] snapshot = snapshot();
+        GradeDistribution distribution = new GradeDistribution(gradeType);
+
+        long count = 0;
+        long weightedSum = 0;
+        int min = -1;
+        int max = -1;
+        long[] bucketCounts = new long[buckets];
+        for (int i = 0; i < SIZE; i++) {
+            if (snapshot[i] == 0) {
+                continue;
+            }
+            count += snapshot[i];
+            weightedSum += snapshot[i] * i;
+            if (min < 0) {
+                min = i;
+            }
+            max = i;
+            bucketCounts[Math.min(buckets - 1, (int) ((long) i * buckets / (SIZE - 1)))] += snapshot[i];
+        }
+
+        double width = 100.0 / buckets;
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            distribution.getHistogram().add(new GradeDistribution.Bucket(GradeStatistics.roundToHundredths(bucket * width),
+                    GradeStatistics.roundToHundredths((bucket + 1) * width), bucketCounts[bucket]));
+        }
+
+        distribution.setCount(count);
+        if (count == 0) {
+            return distribution;
+        }
+        distribution.setMinGrade(toGrade(min));
+        distribution.setMaxGrade(toGrade(max));
+        distribution.setMean(GradeStatistics.roundToHundredths((double) weightedSum / count / RESOLUTION));
+        distribution.setP10(quantile(snapshot, count, 0.10));
+        distribution.setMedian(quantile(snapshot, count, 0.50));
+        distribution.setP90(quantile(snapshot, count, 0.90));
+        return distribution;
+    }
+
+    // Nearest rank: the smallest grade with at least q of all grades at or below it
+    private static double quantile(long[] snapshot, long count, double q) {
+        long rank = Math.max(1, (long) Math.ceil(q * count));
+        long seen = 0;
+        for (int i = 0; i < SIZE; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return toGrade(i);
+            }
+        }
+        return toGrade(SIZE - 1);
+    }
+
+    public static int index(double grade) {
+        return (int) Math.max(0, Math.min(SIZE - 1, Math.round(grade * RESOLUTION)));
+    }
+
+    private static double toGrade(int hundredths) {
+        return hundredths / (double) RESOLUTION;
+    }
+}
@@ -0,0 +1,5 @@
+package com.haifachagwey.springrest.models;
+
+// One grade as read for display: built by a JPQL constructor projection, so Hibernate never manages or snapshots it
+public record GradeRow(int subject, int id, int studentId, double grade) {
+}
@@ -0,0 +1,42 @@
+package com.haifachagwey.springrest.models;
+
+// One row of a bulk grade upload. Boxed so that a field missing from the JSON stays null and is rejected,
+// rather than arriving as a grade of 0 for student 0.
+public class GradeSubmission {
+
+    private Double grade;
+    private String gradeType;
+    private Integer studentId;
+
+    public GradeSubmission() {}
+
+    public GradeSubmission(Double grade, String gradeType, Integer studentId) {
+        this.grade = grade;
+        this.gradeType = gradeType;
+        this.studentId = studentId;
+    }
+
+    public Double getGrade() {
+        return grade;
+    }
+
+    public void setGrade(Double grade) {
+        this.grade = grade;
+    }
+
+    public String getGradeType() {
+        return gradeType;
+    }
+
+    public void setGradeType(String gradeType) {
+        this.gradeType = gradeType;
+    }
+
+    public Integer getStudentId() {
+        return studentId;
+    }
+
+    public void setStudentId(Integer studentId) {
+        this.studentId = studentId;
+    }
+}
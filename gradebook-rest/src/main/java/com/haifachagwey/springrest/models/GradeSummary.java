@@ -0,0 +1,85 @@
+package com.haifachagwey.springrest.models;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+// Count, average, lowest and highest grade in one subject, for the whole class or for one student.
+// Built by the database: the constructors are called from the JPQL projections in GradeDao.
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class GradeSummary {
+
+    private String gradeType;
+    private Integer studentId;
+    private long gradeCount;
+    private Double average;
+    private Double minGrade;
+    private Double maxGrade;
+
+    public GradeSummary() {}
+
+    public GradeSummary(long gradeCount, Double average, Double minGrade, Double maxGrade) {
+        this.gradeCount = gradeCount;
+        // AVG of no rows is null
+        this.average = average == null ? null : GradeStatistics.roundToHundredths(average);
+        this.minGrade = minGrade;
+        this.maxGrade = maxGrade;
+    }
+
+    public GradeSummary(int studentId, long gradeCount, Double average, Double minGrade, Double maxGrade) {
+        this(gradeCount, average, minGrade, maxGrade);
+        this.studentId = studentId;
+    }
+
+    // For the per-subject projection, which has the subject's code where the other has the student id
+    public GradeSummary(long gradeCount, Double average, Double minGrade, Double maxGrade, int subject) {
+        this(gradeCount, average, minGrade, maxGrade);
+        this.gradeType = Subject.fromCode(subject).getGradeType();
+    }
+
+    public String getGradeType() {
+        return gradeType;
+    }
+
+    public void setGradeType(String gradeType) {
+        this.gradeType = gradeType;
+    }
+
+    public Integer getStudentId() {
+        return studentId;
+    }
+
+    public void setStudentId(Integer studentId) {
+        this.studentId = studentId;
+    }
+
+    public long getGradeCount() {
+        return gradeCount;
+    }
+
+    public void setGradeCount(long gradeCount) {
+        this.gradeCount = gradeCount;
+    }
+
+    public Double getAverage() {
+        return average;
+    }
+
+    public void setAverage(Double average) {
+        this.average = average;
+    }
+
+    public Double getMinGrade() {
+        return minGrade;
+    }
+
+    public void setMinGrade(Double minGrade) {
+        this.minGrade = minGrade;
+    }
+
+    public Double getMaxGrade() {
+        return maxGrade;
+    }
+
+    public void setMaxGrade(Double maxGrade) {
+        this.maxGrade = maxGrade;
+    }
+}
@@ -0,0 +1,137 @@
+package com.haifachagwey.springrest.models;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import javax.persistence.*;
+
+// One committed student or grade write, as an entry of the change feed. Versions are handed out in commit order
+// with no gaps, so a client that has applied everything up to version N only needs the entries after N.
+// Each entry names the row it created or removed by id, so a client that is sent one again after reconnecting can skip it.
+@Entity
+@Table(name = "gradebook_change", indexes = @Index(name = "idx_gradebook_change_changed_at", columnList = "changed_at"))
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class GradebookChange {
+
+    public enum Type {
+        STUDENT_CREATED,
+        STUDENT_DELETED,
+        GRADE_CREATED,
+        GRADE_DELETED
+    }
+
+    @Id
+    @Column(name = "version")
+    private long version;
+    @Enumerated(EnumType.STRING)
+    @Column(name = "change_type", length = 20)
+    private Type type;
+    @Column(name = "student_id")
+    private int studentId;
+    @Column(name = "subject")
+    private Integer subject;
+    @Column(name = "grade_id")
+    private Integer gradeId;
+    @Column(name = "grade")
+    private Double grade;
+    @Column(name = "firstname")
+    private String firstname;
+    @Column(name = "lastname")
+    private String lastname;
+    @Column(name = "email_address")
+    private String emailAddress;
+    @Column(name = "changed_at")
+    private long changedAt;
+
+    public GradebookChange() {
+
+    }
+
+    private GradebookChange(Type type, int studentId) {
+        this.type = type;
+        this.studentId = studentId;
+    }
+
+    public static GradebookChange studentCreated(int studentId, String firstname, String lastname, String emailAddress) {
+        GradebookChange change = new GradebookChange(Type.STUDENT_CREATED, studentId);
+        change.firstname = firstname;
+        change.lastname = lastname;
+        change.emailAddress = emailAddress;
+        return change;
+    }
+
+    // The student's grades go with them
+    public static GradebookChange studentDeleted(int studentId) {
+        return new GradebookChange(Type.STUDENT_DELETED, studentId);
+    }
+
+    public static GradebookChange gradeCreated(Subject subject, int gradeId, int studentId, double grade) {
+        GradebookChange change = new GradebookChange(Type.GRADE_CREATED, studentId);
+        change.subject = subject.getCode();
+        change.gradeId = gradeId;
+        change.grade = grade;
+        return change;
+    }
+
+    public static GradebookChange gradeDeleted(Subject subject, int gradeId, int studentId, double grade) {
+        GradebookChange change = new GradebookChange(Type.GRADE_DELETED, studentId);
+        change.subject = subject.getCode();
+        change.gradeId = gradeId;
+        change.grade = grade;
+        return change;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getStudentId() {
+        return studentId;
+    }
+
+    @JsonIgnore
+    public Integer getSubject() {
+        return subject;
+    }
+
+    public String getGradeType() {
+        return subject == null ? null : Subject.fromCode(subject).getGradeType();
+    }
+
+    public Integer getGradeId() {
+        return gradeId;
+    }
+
+    public Double getGrade() {
+        return grade;
+    }
+
+    public String getFirstname() {
+        return firstname;
+    }
+
+    public String getLastname() {
+        return lastname;
+    }
+
+    public String getEmailAddress() {
+        return emailAddress;
+    }
+
+    @JsonIgnore
+    public long getChangedAt() {
+        return changedAt;
+    }
+
+    public void setChangedAt(long changedAt) {
+        this.changedAt = changedAt;
+    }
+}
@@ -0,0 +1,37 @@
+package com.haifachagwey.springrest.models;
+
+import javax.persistence.*;
+
+// The single row that hands out change feed versions. Writers bump it as the last step of their transaction and
+// hold its lock until they commit, which is what keeps versions in commit order. compactedVersion is the newest
+// version that compaction has already thrown away.
+@Entity
+@Table(name = "gradebook_change_counter")
+public class GradebookChangeCounter {
+
+    public static final int ID = 1;
+
+    @Id
+    @Column(name = "id")
+    private int id;
+    @Column(name = "last_version")
+    private long lastVersion;
+    @Column(name = "compacted_version")
+    private long compactedVersion;
+
+    public GradebookChangeCounter() {
+
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public long getLastVersion() {
+        return lastVersion;
+    }
+
+    public long getCompactedVersion() {
+        return compactedVersion;
+    }
+}
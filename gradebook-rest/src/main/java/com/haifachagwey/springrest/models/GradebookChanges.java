@@ -0,0 +1,34 @@
+package com.haifachagwey.springrest.models;
+
+import java.util.List;
+
+// A page of the change feed. version is what the client passes as ?since= next time: the last change returned,
+// or the version it asked from when it is already up to date.
+public class GradebookChanges {
+
+    private long version;
+    private List<GradebookChange> changes;
+
+    public GradebookChanges() {}
+
+    public GradebookChanges(long version, List<GradebookChange> changes) {
+        this.version = version;
+        this.changes = changes;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public List<GradebookChange> getChanges() {
+        return changes;
+    }
+
+    public void setChanges(List<GradebookChange> changes) {
+        this.changes = changes;
+    }
+}
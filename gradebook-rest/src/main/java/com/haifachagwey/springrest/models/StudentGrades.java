@@ -1,26 +1,46 @@
 package com.haifachagwey.springrest.models;
 
-import org.springframework.stereotype.Component;
-
-import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+
+// Immutable per-student snapshot of grades, built fresh for every lookup and safe to share across threads
+public final class StudentGrades {
 
-@Component
-public class StudentGrades {
+    private final List<Grade> mathGradeResults;
 
-    List<Grade> mathGradeResults;
+    private final List<Grade> scienceGradeResults;
 
-    List<Grade> scienceGradeResults;
+    private final List<Grade> historyGradeResults;
+
+    public StudentGrades() {
+        this(List.of(), List.of(), List.of());
+    }
 
-    List<Grade> historyGradeResults;
+    public StudentGrades(List<Grade> mathGradeResults, List<Grade> scienceGradeResults, List<Grade> historyGradeResults) {
+        this.mathGradeResults = List.copyOf(mathGradeResults);
+        this.scienceGradeResults = List.copyOf(scienceGradeResults);
+        this.historyGradeResults = List.copyOf(historyGradeResults);
+    }
 
-    public StudentGrades() {}
+    // Sorts one student's grades, read together from the grade table, into the per-subject lists the API shows
+    public static StudentGrades of(List<SubjectGrade> grades) {
+        Map<Subject, List<Grade>> gradesBySubject = new EnumMap<>(Subject.class);
+        for (Subject subject : Subject.values()) {
+            gradesBySubject.put(subject, new ArrayList<>());
+        }
+        for (SubjectGrade grade : grades) {
+            gradesBySubject.get(Subject.fromCode(grade.getSubject())).add(grade);
+        }
+        return new StudentGrades(gradesBySubject.get(Subject.MATH), gradesBySubject.get(Subject.SCIENCE),
+                gradesBySubject.get(Subject.HISTORY));
+    }
 
     public double addGradeResultsForSingleClass(List<Grade> grades) {
         double result = 0;
-        for (Grade i : grades) {
-            result += i.getGrade();
+        for (int i = 0; i < grades.size(); i++) {
+            result += grades.get(i).getGrade();
         }
         return result;
     }
@@ -28,39 +48,25 @@ public class StudentGrades {
     public double findGradePointAverage (List<Grade> grades ) {
         int lengthOfGrades = grades.size();
         double sum = addGradeResultsForSingleClass(grades);
-        double result = sum / lengthOfGrades;
-
-        // add a round function
-        BigDecimal resultRound = BigDecimal.valueOf(result);
-        resultRound = resultRound.setScale(2, RoundingMode.HALF_UP);
-        return resultRound.doubleValue();
+        return GradeStatistics.roundToHundredths(sum / lengthOfGrades);
+    }
 
+    public double findGradePointAverage (double[] grades) {
+        return GradeStatistics.gradePointAverage(grades, grades.length);
     }
 
     public List<Grade> getMathGradeResults() {
         return mathGradeResults;
     }
 
-    public void setMathGradeResults(List<Grade> mathGradeResults) {
-        this.mathGradeResults = mathGradeResults;
-    }
-
     public List<Grade> getScienceGradeResults() {
         return scienceGradeResults;
     }
 
-    public void setScienceGradeResults(List<Grade> scienceGradeResults) {
-        this.scienceGradeResults = scienceGradeResults;
-    }
-
     public List<Grade> getHistoryGradeResults() {
         return historyGradeResults;
     }
 
-    public void setHistoryGradeResults(List<Grade> historyGradeResults) {
-        this.historyGradeResults = historyGradeResults;
-    }
-
     @Override
     public String toString() {
         return "StudentGrades{" +
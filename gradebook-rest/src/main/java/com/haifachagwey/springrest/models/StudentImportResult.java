@@ -0,0 +1,92 @@
+package com.haifachagwey.springrest.models;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Outcome of a bulk student import: rows committed, rows refused, and the first few reasons why
+public class StudentImportResult {
+
+    public static final int MAX_REPORTED_ERRORS = 100;
+
+    private int imported;
+    private int failed;
+    private int chunks;
+    private List<RejectedRow> errors = new ArrayList<>();
+
+    public StudentImportResult() {}
+
+    public int getImported() {
+        return imported;
+    }
+
+    public void setImported(int imported) {
+        this.imported = imported;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public void setFailed(int failed) {
+        this.failed = failed;
+    }
+
+    public int getChunks() {
+        return chunks;
+    }
+
+    public void setChunks(int chunks) {
+        this.chunks = chunks;
+    }
+
+    public List<RejectedRow> getErrors() {
+        return errors;
+    }
+
+    public void setErrors(List<RejectedRow> errors) {
+        this.errors = errors;
+    }
+
+    public void chunkImported(int rows) {
+        imported += rows;
+        chunks++;
+    }
+
+    // Every failure is counted but only the first MAX_REPORTED_ERRORS are itemised, so a bad file can't blow up the response
+    public void reject(long line, String reason) {
+        failed++;
+        if (errors.size() < MAX_REPORTED_ERRORS) {
+            errors.add(new RejectedRow(line, reason));
+        }
+    }
+
+    public static class RejectedRow {
+
+        // One-based line number in the upload
+        private long line;
+        private String reason;
+
+        public RejectedRow() {}
+
+        public RejectedRow(long line, String reason) {
+            this.line = line;
+            this.reason = reason;
+        }
+
+        public long getLine() {
+            return line;
+        }
+
+        public void setLine(long line) {
+            this.line = line;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        public void setReason(String reason) {
+            this.reason = reason;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.haifachagwey.springrest.models;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+// Where one student stands in one subject: rank 1 is the best average, out of every student with a grade in it
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class StudentRank {
+
+    private String gradeType;
+    private int studentId;
+    private int rank;
+    private double average;
+    private int outOf;
+
+    public StudentRank() {}
+
+    public StudentRank(int studentId, int rank, double average, int outOf) {
+        this.studentId = studentId;
+        this.rank = rank;
+        this.average = average;
+        this.outOf = outOf;
+    }
+
+    public String getGradeType() {
+        return gradeType;
+    }
+
+    public void setGradeType(String gradeType) {
+        this.gradeType = gradeType;
+    }
+
+    public int getStudentId() {
+        return studentId;
+    }
+
+    public void setStudentId(int studentId) {
+        this.studentId = studentId;
+    }
+
+    public int getRank() {
+        return rank;
+    }
+
+    public void setRank(int rank) {
+        this.rank = rank;
+    }
+
+    public double getAverage() {
+        return average;
+    }
+
+    public void setAverage(double average) {
+        this.average = average;
+    }
+
+    public int getOutOf() {
+        return outOf;
+    }
+
+    public void setOutOf(int outOf) {
+        this.outOf = outOf;
+    }
+}
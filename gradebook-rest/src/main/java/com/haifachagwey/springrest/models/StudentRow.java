@@ -0,0 +1,5 @@
+package com.haifachagwey.springrest.models;
+
+// A student as read for display: built by a JPQL constructor projection, so Hibernate never manages or snapshots it
+public record StudentRow(int id, String firstname, String lastname, String emailAddress) {
+}
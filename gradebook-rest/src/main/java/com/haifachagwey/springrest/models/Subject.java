@@ -0,0 +1,50 @@
+package com.haifachagwey.springrest.models;
+
+// The subjects a grade can belong to. The code is what the grade and grade_aggregate tables store.
+public enum Subject {
+
+    MATH(0, "math"),
+    SCIENCE(1, "science"),
+    HISTORY(2, "history");
+
+    private static final Subject[] BY_CODE = values();
+
+    private final int code;
+    private final String gradeType;
+
+    Subject(int code, String gradeType) {
+        this.code = code;
+        this.gradeType = gradeType;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public String getGradeType() {
+        return gradeType;
+    }
+
+    // null for anything that is not one of the gradeType names, so callers can treat it as "not found"
+    public static Subject fromGradeType(String gradeType) {
+        for (Subject subject : BY_CODE) {
+            if (subject.gradeType.equals(gradeType)) {
+                return subject;
+            }
+        }
+        return null;
+    }
+
+    public static Subject fromCode(int code) {
+        if (code < 0 || code >= BY_CODE.length) {
+            throw new IllegalArgumentException("Unknown subject code " + code);
+        }
+        return BY_CODE[code];
+    }
+
+    public SubjectGrade newGrade(double grade, int studentId) {
+        SubjectGrade newGrade = new SubjectGrade(this, grade);
+        newGrade.setStudentId(studentId);
+        return newGrade;
+    }
+}
@@ -0,0 +1,55 @@
+package com.haifachagwey.springrest.repository;
+
+import com.haifachagwey.springrest.models.GradeRow;
+import com.haifachagwey.springrest.models.GradeSummary;
+import com.haifachagwey.springrest.models.SubjectGrade;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.QueryHint;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
+// Every subject's grades, in the one grade table. Queries about a single subject take its code.
+@Repository
+public interface GradeDao extends CrudRepository<SubjectGrade, SubjectGrade.Key> {
+
+    public Iterable<SubjectGrade> findGradeBySubjectAndStudentId (int subject, int studentId);
+
+    public Iterable<SubjectGrade> findGradeByStudentIdBetween (int fromStudentId, int toStudentId);
+
+    // The grades as read-only rows rather than managed entities, for display
+    @Query("select new com.haifachagwey.springrest.models.GradeRow(g.subject, g.id, g.studentId, g.grade) from SubjectGrade g")
+    public List<GradeRow> findAllRows();
+
+    @Query("select new com.haifachagwey.springrest.models.GradeRow(g.subject, g.id, g.studentId, g.grade) from SubjectGrade g"
+            + " where g.studentId between :fromStudentId and :toStudentId")
+    public List<GradeRow> findRowsByStudentIdBetween(@Param("fromStudentId") int fromStudentId, @Param("toStudentId") int toStudentId);
+
+    // One set-based statement instead of loading every grade and deleting them one by one
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from SubjectGrade g where g.studentId = :studentId")
+    public int deleteByStudentId(@Param("studentId") int id);
+
+    // Aggregated by the database, so one row per subject with grades comes back however many grades there are
+    @Query("select new com.haifachagwey.springrest.models.GradeSummary(count(g), avg(g.grade), min(g.grade), max(g.grade), g.subject)"
+            + " from SubjectGrade g group by g.subject")
+    public List<GradeSummary> summarizeBySubject();
+
+    // One row per student with grades in the subject and range, for a page of students fetched beforehand
+    @Query("select new com.haifachagwey.springrest.models.GradeSummary(g.studentId, count(g), avg(g.grade), min(g.grade), max(g.grade))"
+            + " from SubjectGrade g where g.subject = :subject and g.studentId between :fromStudentId and :toStudentId group by g.studentId")
+    public List<GradeSummary> summarizeByStudentIdBetween(@Param("subject") int subject, @Param("fromStudentId") int fromStudentId,
+                                                          @Param("toStudentId") int toStudentId);
+
+    // Forward-only cursor in student id order, used by the streaming export
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READONLY, value = "true")})
+    public Stream<SubjectGrade> streamAllByOrderByStudentIdAscSubjectAscIdAsc();
+}
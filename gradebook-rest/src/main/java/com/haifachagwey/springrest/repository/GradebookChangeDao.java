@@ -0,0 +1,15 @@
+package com.haifachagwey.springrest.repository;
+
+import com.haifachagwey.springrest.models.GradebookChange;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface GradebookChangeDao extends CrudRepository<GradebookChange, Long> {
+
+    // The primary key is the version, so this is a range scan starting right after the client's version
+    public List<GradebookChange> findByVersionGreaterThanOrderByVersionAsc(long version, Pageable pageable);
+}
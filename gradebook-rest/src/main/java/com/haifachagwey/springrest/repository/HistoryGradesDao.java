@@ -1,13 +0,0 @@
-package com.haifachagwey.springrest.repository;
-
-import com.haifachagwey.springrest.models.HistoryGrade;
-import org.springframework.data.repository.CrudRepository;
-import org.springframework.stereotype.Repository;
-
-@Repository
-public interface HistoryGradesDao extends CrudRepository<HistoryGrade, Integer> {
-
-    public Iterable<HistoryGrade> findGradeByStudentId (int id);
-
-    public void deleteByStudentId(int id);
-}
@@ -1,13 +0,0 @@
-package com.haifachagwey.springrest.repository;
-
-import com.haifachagwey.springrest.models.MathGrade;
-import org.springframework.data.repository.CrudRepository;
-import org.springframework.stereotype.Repository;
-
-@Repository
-public interface MathGradesDao extends CrudRepository<MathGrade, Integer> {
-
-    public Iterable<MathGrade> findGradeByStudentId (int id);
-
-    public void deleteByStudentId(int id);
-}
@@ -1,11 +1,49 @@
 package com.haifachagwey.springrest.repository;
 
 import com.haifachagwey.springrest.models.CollegeStudent;
+import com.haifachagwey.springrest.models.StudentRow;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
 @Repository
 public interface StudentDao extends CrudRepository<CollegeStudent, Integer> {
 
     public CollegeStudent findByEmailAddress(String emailAddress);
+
+    // Every student as a read-only row, in id order
+    @Query("select new com.haifachagwey.springrest.models.StudentRow(s.id, s.firstname, s.lastname, s.emailAddress)"
+            + " from CollegeStudent s order by s.id")
+    public List<StudentRow> findAllRows();
+
+    // Keyset page: the students that come after the given id, in id order
+    @Query("select new com.haifachagwey.springrest.models.StudentRow(s.id, s.firstname, s.lastname, s.emailAddress)"
+            + " from CollegeStudent s where s.id > :id order by s.id")
+    public List<StudentRow> findRowsByIdGreaterThan(@Param("id") int id, Pageable pageable);
+
+    // Forward-only cursor in id order, used by the streaming export. Read-only entities skip the dirty-checking snapshot.
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READONLY, value = "true")})
+    public Stream<CollegeStudent> streamAllByOrderByIdAsc();
+
+    // Deletes without loading the student first; the count tells the caller whether there was one
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from CollegeStudent s where s.id = :id")
+    public int deleteStudentById(@Param("id") int id);
+
+    // Which of the given ids belong to an existing student, answered in a single query
+    @Query("select s.id from CollegeStudent s where s.id in :ids")
+    public Set<Integer> findExistingIds(@Param("ids") Collection<Integer> ids);
 }
@@ -0,0 +1,157 @@
+package com.haifachagwey.springrest.service;
+
+import com.haifachagwey.springrest.models.GradeAggregate;
+import com.haifachagwey.springrest.models.GradeAggregateReport;
+import com.haifachagwey.springrest.models.Subject;
+import com.haifachagwey.springrest.repository.GradeAggregateDao;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Keeps grade_aggregate in step with the grade table. Every method joins the caller's transaction, so an aggregate
+// changes exactly when the grades it summarises do. Writes are single SQL statements that adjust the row in place,
+// which keeps concurrent writers to the same student and subject from losing each other's updates.
+@Service
+@Transactional
+public class GradeAggregateService {
+
+    // min/max are assigned before total/count: MySQL applies SET clauses left to right, standard SQL does not,
+    // and this order gives the same result either way. least/greatest of a null min/max yields null on MySQL,
+    // hence the coalesce.
+    private static final String ADD = "update grade_aggregate set"
+            + " min_grade = coalesce(least(min_grade, ?), ?),"
+            + " max_grade = coalesce(greatest(max_grade, ?), ?),"
+            + " total = total + ?, grade_count = grade_count + ?"
+            + " where student_id = ? and subject = ?";
+
+    private static final String INSERT = "insert into grade_aggregate(student_id, subject, total, grade_count, min_grade, max_grade)"
+            + " values (?, ?, ?, ?, ?, ?)";
+
+    // Relative tolerance when comparing a running total against a fresh SUM: the two add in different orders
+    private static final double TOTAL_TOLERANCE = 1e-9;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private GradeAggregateDao gradeAggregateDao;
+
+    @Value("${gradebook.aggregates.verify-on-startup:true}")
+    private boolean verifyOnStartup;
+
+    public void add(Subject subject, int studentId, double grade) {
+        add(subject, studentId, grade, 1, grade, grade);
+    }
+
+    public void addAll(Subject subject, Map<Integer, GradeAggregate> aggregatesByStudentId) {
+        for (GradeAggregate delta : aggregatesByStudentId.values()) {
+            add(subject, delta.getStudentId(), delta.getTotal(), delta.getGradeCount(), delta.getMinGrade(), delta.getMaxGrade());
+        }
+    }
+
+    // After a delete the minimum or maximum may have gone, so the row is recomputed from that student's grades,
+    // an index range scan over a handful of rows. The grade delete must already have been flushed.
+    public void recompute(Subject subject, int studentId) {
+        int code = subject.getCode();
+        jdbc.update("update grade_aggregate set"
+                        + " total = coalesce((select sum(grade) from grade where student_id = ? and subject = ?), 0),"
+                        + " grade_count = (select count(*) from grade where student_id = ? and subject = ?),"
+                        + " min_grade = (select min(grade) from grade where student_id = ? and subject = ?),"
+                        + " max_grade = (select max(grade) from grade where student_id = ? and subject = ?)"
+                        + " where student_id = ? and subject = ?",
+                studentId, code, studentId, code, studentId, code, studentId, code, studentId, code);
+    }
+
+    public void removeStudent(int studentId) {
+        gradeAggregateDao.deleteByStudentId(studentId);
+    }
+
+    @Transactional(readOnly = true)
+    public List<GradeAggregate> findByStudentId(int studentId) {
+        return gradeAggregateDao.findByStudentIdOrderBySubjectAsc(studentId);
+    }
+
+    // Compares every aggregate row with a GROUP BY over the grade table and, if asked, rebuilds the table when
+    // anything disagrees
+    public GradeAggregateReport verify(boolean rebuildOnMismatch) {
+        int checked = 0;
+        int mismatched = 0;
+        for (Subject subject : Subject.values()) {
+            Map<Integer, GradeAggregate> stored = new HashMap<>();
+            jdbc.query("select student_id, total, grade_count, min_grade, max_grade from grade_aggregate where subject = ? and grade_count > 0",
+                    row -> {
+                        GradeAggregate aggregate = new GradeAggregate(row.getInt(1), subject.getCode(), row.getDouble(2), row.getInt(3),
+                                row.getDouble(4), row.getDouble(5));
+                        stored.put(aggregate.getStudentId(), aggregate);
+                    }, subject.getCode());
+
+            List<GradeAggregate> actual = jdbc.query("select student_id, sum(grade), count(*), min(grade), max(grade) from grade"
+                            + " where subject = ? group by student_id",
+                    (row, rowNumber) -> new GradeAggregate(row.getInt(1), subject.getCode(), row.getDouble(2), row.getInt(3),
+                            row.getDouble(4), row.getDouble(5)), subject.getCode());
+
+            for (GradeAggregate expected : actual) {
+                checked++;
+                if (!matches(expected, stored.remove(expected.getStudentId()))) {
+                    mismatched++;
+                }
+            }
+            // Whatever is left claims grades that no longer exist
+            checked += stored.size();
+            mismatched += stored.size();
+        }
+
+        if (mismatched > 0 && rebuildOnMismatch) {
+            rebuild();
+            return new GradeAggregateReport(checked, mismatched, true);
+        }
+        return new GradeAggregateReport(checked, mismatched, false);
+    }
+
+    public void rebuild() {
+        jdbc.update("delete from grade_aggregate");
+        jdbc.update("insert into grade_aggregate(student_id, subject, total, grade_count, min_grade, max_grade)"
+                + " select student_id, subject, sum(grade), count(*), min(grade), max(grade) from grade group by student_id, subject");
+    }
+
+    // Picks up grades written before this table existed, or by anything that went around the service.
+    // Runs ahead of the other startup listeners, some of which read this table.
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void verifyOnStartup() {
+        if (verifyOnStartup) {
+            verify(true);
+        }
+    }
+
+    private void add(Subject subject, int studentId, double total, int count, double min, double max) {
+        if (jdbc.update(ADD, min, min, max, max, total, count, studentId, subject.getCode()) > 0) {
+            return;
+        }
+        try {
+            jdbc.update(INSERT, studentId, subject.getCode(), total, count, min, max);
+        } catch (DuplicateKeyException exc) {
+            // Another transaction created the row between our update and insert; it is there now
+            jdbc.update(ADD, min, min, max, max, total, count, studentId, subject.getCode());
+        }
+    }
+
+    private static boolean matches(GradeAggregate expected, GradeAggregate stored) {
+        return stored != null
+                && stored.getGradeCount() == expected.getGradeCount()
+                && stored.getMinGrade().equals(expected.getMinGrade())
+                && stored.getMaxGrade().equals(expected.getMaxGrade())
+                && Math.abs(stored.getTotal() - expected.getTotal()) <= TOTAL_TOLERANCE * Math.max(1, Math.abs(expected.getTotal()));
+    }
+}
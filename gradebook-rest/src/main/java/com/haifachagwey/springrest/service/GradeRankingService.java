@@ -0,0 +1,165 @@
+package com.haifachagwey.springrest.service;
+
+import com.haifachagwey.springrest.models.AverageRanking;
+import com.haifachagwey.springrest.models.GradeStatistics;
+import com.haifachagwey.springrest.models.StudentRank;
+import com.haifachagwey.springrest.models.Subject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Per-subject rankings by average, held in memory and re-read from grade_aggregate after each committed write
+@Service
+public class GradeRankingService {
+
+    public static final int DEFAULT_TOP = 50;
+
+    public static final int MAX_TOP = 500;
+
+    private static final int RELOAD_CHUNK_SIZE = 1000;
+
+    private final Map<Subject, Tracker> trackers = new EnumMap<>(Subject.class);
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    public GradeRankingService() {
+        for (Subject subject : Subject.values()) {
+            trackers.put(subject, new Tracker());
+        }
+    }
+
+    public void studentChanged(Subject subject, int studentId) {
+        AfterCommit.run(() -> reload(subject, List.of(studentId)));
+    }
+
+    public void studentsChanged(Subject subject, Collection<Integer> studentIds) {
+        List<Integer> changed = new ArrayList<>(studentIds);
+        AfterCommit.run(() -> reload(subject, changed));
+    }
+
+    public void studentRemoved(int studentId) {
+        AfterCommit.run(() -> {
+            for (Tracker tracker : trackers.values()) {
+                synchronized (tracker) {
+                    tracker.current.remove(studentId);
+                    tracker.changed(List.of(studentId));
+                }
+            }
+        });
+    }
+
+    public List<StudentRank> getTopStudents(Subject subject, int limit) {
+        List<StudentRank> top = trackers.get(subject).current.top(Math.max(1, Math.min(limit, MAX_TOP)));
+        for (StudentRank rank : top) {
+            rank.setGradeType(subject.getGradeType());
+        }
+        return top;
+    }
+
+    // Null if the student has no grades in the subject
+    public StudentRank getRank(Subject subject, int studentId) {
+        StudentRank rank = trackers.get(subject).current.rankOf(studentId);
+        if (rank != null) {
+            rank.setGradeType(subject.getGradeType());
+        }
+        return rank;
+    }
+
+    // Runs after the aggregates have been checked at startup, then on the same interval as the grade statistics
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${gradebook.statistics.rebuild-interval-ms:300000}",
+            fixedDelayString = "${gradebook.statistics.rebuild-interval-ms:300000}")
+    public synchronized void rebuild() {
+        for (Subject subject : Subject.values()) {
+            rebuild(subject);
+        }
+    }
+
+    // Students changed while the rebuild query runs are remembered and re-read once the new ranking is in place
+    private void rebuild(Subject subject) {
+        Tracker tracker = trackers.get(subject);
+        Set<Integer> changedDuringRebuild = ConcurrentHashMap.newKeySet();
+        tracker.changedDuringRebuild = changedDuringRebuild;
+        AverageRanking rebuilt = new AverageRanking();
+        jdbc.query("select student_id, total, grade_count from grade_aggregate where subject = ? and grade_count > 0",
+                (RowCallbackHandler) row -> rebuilt.put(row.getInt(1), average(row.getDouble(2), row.getInt(3))),
+                subject.getCode());
+        // Swapped under the lock so that a re-read lands either in the old ranking and is repeated, or in the new one
+        synchronized (tracker) {
+            tracker.current = rebuilt;
+            tracker.changedDuringRebuild = null;
+        }
+        if (!changedDuringRebuild.isEmpty()) {
+            reload(subject, new ArrayList<>(changedDuringRebuild));
+        }
+    }
+
+    // Each chunk is read and applied under the subject's lock, so an earlier re-read can never land after a later
+    // one and put an older average back
+    private void reload(Subject subject, List<Integer> studentIds) {
+        Tracker tracker = trackers.get(subject);
+        for (int from = 0; from < studentIds.size(); from += RELOAD_CHUNK_SIZE) {
+            List<Integer> chunk = studentIds.subList(from, Math.min(from + RELOAD_CHUNK_SIZE, studentIds.size()));
+            synchronized (tracker) {
+                reloadChunk(subject, tracker, chunk);
+            }
+        }
+    }
+
+    private void reloadChunk(Subject subject, Tracker tracker, List<Integer> chunk) {
+        Set<Integer> missing = new HashSet<>(chunk);
+        AverageRanking ranking = tracker.current;
+
+        List<Object> parameters = new ArrayList<>(chunk.size() + 1);
+        parameters.add(subject.getCode());
+        parameters.addAll(chunk);
+        jdbc.query("select student_id, total, grade_count from grade_aggregate where subject = ? and student_id in ("
+                        + String.join(",", Collections.nCopies(chunk.size(), "?")) + ")",
+                (RowCallbackHandler) row -> {
+                    if (row.getInt(3) > 0) {
+                        ranking.put(row.getInt(1), average(row.getDouble(2), row.getInt(3)));
+                        missing.remove(row.getInt(1));
+                    }
+                }, parameters.toArray());
+
+        // No row, or no grades left: the student drops out of the ranking
+        for (Integer studentId : missing) {
+            ranking.remove(studentId);
+        }
+        tracker.changed(chunk);
+    }
+
+    // Rounded the same way as GradeAggregate.getAverage
+    private static double average(double total, int count) {
+        return GradeStatistics.roundToHundredths(total / count);
+    }
+
+    private static final class Tracker {
+
+        private volatile AverageRanking current = new AverageRanking();
+
+        private volatile Set<Integer> changedDuringRebuild;
+
+        void changed(Collection<Integer> studentIds) {
+            Set<Integer> rebuilding = changedDuringRebuild;
+            if (rebuilding != null) {
+                rebuilding.addAll(studentIds);
+            }
+        }
+    }
+}
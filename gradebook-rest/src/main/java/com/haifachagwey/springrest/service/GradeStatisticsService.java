@@ -0,0 +1,151 @@
+package com.haifachagwey.springrest.service;
+
+import com.haifachagwey.springrest.models.GradeDistribution;
+import com.haifachagwey.springrest.models.GradeHistogram;
+import com.haifachagwey.springrest.models.GradebookChange;
+import com.haifachagwey.springrest.models.Subject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.haifachagwey.springrest.models.GradebookChangeCounter.ID;
+
+// Class-wide grade distributions per subject, fed by the committed change log and settled by a periodic rebuild
+@Service
+public class GradeStatisticsService {
+
+    public static final int DEFAULT_BUCKETS = 10;
+
+    public static final int MAX_BUCKETS = 100;
+
+    private final Map<Subject, Tracker> trackers = new EnumMap<>(Subject.class);
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate snapshot;
+
+    public GradeStatisticsService() {
+        for (Subject subject : Subject.values()) {
+            trackers.put(subject, new Tracker());
+        }
+    }
+
+    @PostConstruct
+    public void createSnapshotTemplate() {
+        snapshot = new TransactionTemplate(transactionManager);
+        snapshot.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        snapshot.setReadOnly(true);
+    }
+
+    // Called by the change log once the changes have committed
+    public void changesCommitted(List<GradebookChange> changes) {
+        for (GradebookChange change : changes) {
+            if (change.getType() == GradebookChange.Type.GRADE_CREATED || change.getType() == GradebookChange.Type.GRADE_DELETED) {
+                trackers.get(Subject.fromCode(change.getSubject()))
+                        .apply(new Update(change.getVersion(), change.getGrade(), change.getType() == GradebookChange.Type.GRADE_CREATED));
+            }
+        }
+    }
+
+    public GradeDistribution getDistribution(Subject subject, int buckets) {
+        return trackers.get(subject).current.describe(subject.getGradeType(), Math.max(1, Math.min(buckets, MAX_BUCKETS)));
+    }
+
+    // Also settles what the change log does not carry: student deletes and writes from the MVC app
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${gradebook.statistics.rebuild-interval-ms:300000}",
+            fixedDelayString = "${gradebook.statistics.rebuild-interval-ms:300000}")
+    public synchronized void rebuild() {
+        for (Subject subject : Subject.values()) {
+            rebuild(subject);
+        }
+    }
+
+    // The database groups the grades by hundredth, so at most 10,001 rows come back. Writers carry on meanwhile.
+    private void rebuild(Subject subject) {
+        Tracker tracker = trackers.get(subject);
+        tracker.startRebuild();
+        try {
+            GradeHistogram rebuilt = new GradeHistogram();
+            long version = snapshot.execute(status -> {
+                // The first read fixes the snapshot, so the grades below are exactly the ones up to this version
+                List<Long> lastVersion = jdbc.queryForList("select last_version from gradebook_change_counter where id = ?", Long.class, ID);
+                jdbc.query("select round(grade * " + GradeHistogram.RESOLUTION + "), count(*) from grade where subject = ?"
+                                + " group by round(grade * " + GradeHistogram.RESOLUTION + ")",
+                        (RowCallbackHandler) row -> rebuilt.add(GradeHistogram.index(row.getDouble(1) / GradeHistogram.RESOLUTION), row.getLong(2)),
+                        subject.getCode());
+                return lastVersion.isEmpty() ? 0L : lastVersion.get(0);
+            });
+            tracker.swap(rebuilt, version);
+        } finally {
+            tracker.endRebuild();
+        }
+    }
+
+    private record Update(long version, double grade, boolean added) {
+
+        void applyTo(GradeHistogram histogram) {
+            if (added) {
+                histogram.add(grade);
+            } else {
+                histogram.remove(grade);
+            }
+        }
+    }
+
+    // One subject's histogram and the change version it is complete up to: an update at or below that version is
+    // already counted. While a rebuild scans, updates are also kept aside, and the swap replays the ones newer than
+    // the rebuild's snapshot. The lock is only held in memory, never across a query or a commit.
+    private static final class Tracker {
+
+        private volatile GradeHistogram current = new GradeHistogram();
+
+        private long version;
+
+        private List<Update> pending;
+
+        synchronized void apply(Update update) {
+            if (pending != null) {
+                pending.add(update);
+            }
+            if (update.version() > version) {
+                update.applyTo(current);
+            }
+        }
+
+        synchronized void startRebuild() {
+            pending = new ArrayList<>();
+        }
+
+        synchronized void swap(GradeHistogram rebuilt, long rebuiltVersion) {
+            for (Update update : pending) {
+                if (update.version() > rebuiltVersion) {
+                    update.applyTo(rebuilt);
+                }
+            }
+            current = rebuilt;
+            version = rebuiltVersion;
+        }
+
+        synchronized void endRebuild() {
+            pending = null;
+        }
+    }
+}
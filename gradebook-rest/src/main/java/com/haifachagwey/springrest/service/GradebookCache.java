@@ -0,0 +1,113 @@
+package com.haifachagwey.springrest.service;
+
+import com.haifachagwey.springrest.models.Gradebook;
+import com.haifachagwey.springrest.models.GradebookCollegeStudent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.interceptor.SimpleKey;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.function.Supplier;
+
+// The read caches behind GET /studentInformation/{id} and GET /, and the only place entries are put or evicted
+@Component
+public class GradebookCache {
+
+    public static final String STUDENT_INFORMATION = "studentInformation";
+
+    public static final String GRADEBOOK = "gradebook";
+
+    private static final Object GRADEBOOK_KEY = SimpleKey.EMPTY;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private RequestCoalescer requestCoalescer;
+
+    // Version checks, the puts they guard, evictions and version bumps all happen under the lock on this object.
+    // Evictions run after commit and bump the version, and a load is only cached if the version it noted before
+    // reading is still current, so a read from before a commit never puts the old rows back.
+    @Autowired
+    private GradebookVersions gradebookVersions;
+
+    // Null for a student that does not exist, which is not cached
+    @SuppressWarnings("unchecked")
+    public Versioned<GradebookCollegeStudent> studentInformation(int studentId, Supplier<GradebookCollegeStudent> loader) {
+        Cache cache = cacheManager.getCache(STUDENT_INFORMATION);
+        Cache.ValueWrapper cached = cache.get(studentId);
+        if (cached != null) {
+            return (Versioned<GradebookCollegeStudent>) cached.get();
+        }
+        long version = gradebookVersions.getStudentVersion(studentId);
+        GradebookCollegeStudent student = requestCoalescer.studentInformation(studentId, version, () -> {
+            GradebookCollegeStudent loaded = loader.get();
+            if (loaded != null) {
+                synchronized (this) {
+                    if (gradebookVersions.getStudentVersion(studentId) == version) {
+                        cache.put(studentId, new Versioned<>(loaded, version));
+                    }
+                }
+            }
+            return loaded;
+        });
+        return student == null ? null : new Versioned<>(student, version);
+    }
+
+    @SuppressWarnings("unchecked")
+    public Versioned<Gradebook> gradebook(Supplier<Gradebook> loader) {
+        Cache cache = cacheManager.getCache(GRADEBOOK);
+        Cache.ValueWrapper cached = cache.get(GRADEBOOK_KEY);
+        if (cached != null) {
+            return (Versioned<Gradebook>) cached.get();
+        }
+        long version = gradebookVersions.getGradebookVersion();
+        Gradebook gradebook = requestCoalescer.gradebook(version, () -> {
+            Gradebook loaded = loader.get();
+            synchronized (this) {
+                if (gradebookVersions.getGradebookVersion() == version) {
+                    cache.put(GRADEBOOK_KEY, new Versioned<>(loaded, version));
+                }
+            }
+            return loaded;
+        });
+        return new Versioned<>(gradebook, version);
+    }
+
+    public void evictStudent(int studentId) {
+        AfterCommit.run(() -> {
+            synchronized (this) {
+                gradebookVersions.studentChanged(studentId);
+                cacheManager.getCache(STUDENT_INFORMATION).evict(studentId);
+                cacheManager.getCache(GRADEBOOK).clear();
+            }
+        });
+    }
+
+    public void evictStudents(Collection<Integer> studentIds) {
+        AfterCommit.run(() -> {
+            synchronized (this) {
+                gradebookVersions.studentsChanged(studentIds);
+                for (Integer studentId : studentIds) {
+                    cacheManager.getCache(STUDENT_INFORMATION).evict(studentId);
+                }
+                cacheManager.getCache(GRADEBOOK).clear();
+            }
+        });
+    }
+
+    public void evictGradebook() {
+        AfterCommit.run(() -> {
+            synchronized (this) {
+                gradebookVersions.gradebookChanged();
+                cacheManager.getCache(GRADEBOOK).clear();
+            }
+        });
+    }
+
+    // A value as it was at the given GradebookVersions version, or later
+    public record Versioned<T>(T value, long version) {
+    }
+}
@@ -0,0 +1,147 @@
+package com.haifachagwey.springrest.service;
+
+import com.haifachagwey.springrest.models.GradebookChange;
+import com.haifachagwey.springrest.models.GradebookChanges;
+import com.haifachagwey.springrest.repository.GradebookChangeDao;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Types;
+import java.util.List;
+
+import static com.haifachagwey.springrest.models.GradebookChangeCounter.ID;
+
+// The change feed behind GET /changes. Every method joins the caller's transaction, so an entry is committed
+// exactly when the write it describes is, and a rolled back write leaves nothing behind. Versions come from a
+// single counter row that each writer bumps as its last statement and keeps locked until it commits: versions
+// therefore become visible in order and without gaps, and a reader never skips one that commits late.
+// Once they commit, entries are also pushed to the Server-Sent Events subscribers and the grade statistics.
+@Service
+@Transactional
+public class GradebookChangeLog {
+
+    public static final int DEFAULT_LIMIT = 1000;
+
+    public static final int MAX_LIMIT = 10_000;
+
+    // Matches spring.jpa.properties.hibernate.jdbc.batch_size
+    private static final int INSERT_BATCH_SIZE = 500;
+
+    private static final String ALLOCATE = "update gradebook_change_counter set last_version = last_version + ? where id = ?";
+
+    private static final String INSERT = "insert into gradebook_change(version, change_type, student_id, subject, grade_id, grade,"
+            + " firstname, lastname, email_address, changed_at) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private GradebookChangeDao gradebookChangeDao;
+
+    @Autowired
+    private GradebookEventBroadcaster gradebookEventBroadcaster;
+
+    @Autowired
+    private GradeStatisticsService gradeStatisticsService;
+
+    @Value("${gradebook.changes.retention-ms:86400000}")
+    private long retentionMillis;
+
+    public void record(GradebookChange change) {
+        record(List.of(change));
+    }
+
+    public void record(List<GradebookChange> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        long version = allocate(changes.size());
+        long now = System.currentTimeMillis();
+        for (GradebookChange change : changes) {
+            change.setVersion(version++);
+            change.setChangedAt(now);
+        }
+        jdbc.batchUpdate(INSERT, changes, INSERT_BATCH_SIZE,
+                (statement, change) -> {
+                    statement.setLong(1, change.getVersion());
+                    statement.setString(2, change.getType().name());
+                    statement.setInt(3, change.getStudentId());
+                    statement.setObject(4, change.getSubject(), Types.INTEGER);
+                    statement.setObject(5, change.getGradeId(), Types.INTEGER);
+                    statement.setObject(6, change.getGrade(), Types.DOUBLE);
+                    statement.setString(7, change.getFirstname());
+                    statement.setString(8, change.getLastname());
+                    statement.setString(9, change.getEmailAddress());
+                    statement.setLong(10, change.getChangedAt());
+                });
+        AfterCommit.run(() -> {
+            gradeStatisticsService.changesCommitted(changes);
+            gradebookEventBroadcaster.publish(changes);
+        });
+    }
+
+    // At most limit changes after the given version, oldest first. Without a version nothing is returned but the
+    // current version, which a client reads before loading the full gradebook and then polls from. Returns null
+    // when the client has to start over: the entries it needs were compacted away, or its version was never handed out.
+    @Transactional(readOnly = true)
+    public GradebookChanges changesSince(Long since, int limit) {
+
+        int pageSize = Math.max(1, Math.min(limit, MAX_LIMIT));
+
+        List<GradebookChange> changes = since == null ? List.of()
+                : gradebookChangeDao.findByVersionGreaterThanOrderByVersionAsc(since, PageRequest.of(0, pageSize));
+
+        // Read after the changes, so a compaction that ran before them is seen here
+        long[] counter = counter();
+        long lastVersion = counter[0];
+        long compactedVersion = counter[1];
+
+        if (since == null) {
+            return new GradebookChanges(lastVersion, List.of());
+        }
+        if (since < compactedVersion || since > lastVersion) {
+            return null;
+        }
+        return new GradebookChanges(changes.isEmpty() ? since : changes.get(changes.size() - 1).getVersion(), changes);
+    }
+
+    // Drops the entries older than the retention period. Clients still behind them get a 410 and reload.
+    @Scheduled(initialDelayString = "${gradebook.changes.compaction-interval-ms:3600000}",
+            fixedDelayString = "${gradebook.changes.compaction-interval-ms:3600000}")
+    public void compact() {
+        Long compactedVersion = jdbc.queryForObject("select max(version) from gradebook_change where changed_at <= ?", Long.class,
+                System.currentTimeMillis() - retentionMillis);
+        if (compactedVersion == null) {
+            return;
+        }
+        jdbc.update("update gradebook_change_counter set compacted_version = ? where id = ? and compacted_version < ?",
+                compactedVersion, ID, compactedVersion);
+        jdbc.update("delete from gradebook_change where version <= ?", compactedVersion);
+    }
+
+    // Reserves count versions and returns the first of them
+    private long allocate(int count) {
+        if (jdbc.update(ALLOCATE, count, ID) == 0) {
+            try {
+                jdbc.update("insert into gradebook_change_counter(id, last_version, compacted_version) values (?, 0, 0)", ID);
+            } catch (DuplicateKeyException exc) {
+                // Another transaction created the row between our update and insert; it is there now
+            }
+            jdbc.update(ALLOCATE, count, ID);
+        }
+        return jdbc.queryForObject("select last_version from gradebook_change_counter where id = ?", Long.class, ID) - count + 1;
+    }
+
+    // Last version handed out and last version compacted, both 0 before the first write
+    private long[] counter() {
+        List<long[]> rows = jdbc.query("select last_version, compacted_version from gradebook_change_counter where id = ?",
+                (row, rowNumber) -> new long[] {row.getLong(1), row.getLong(2)}, ID);
+        return rows.isEmpty() ? new long[] {0, 0} : rows.get(0);
+    }
+}
@@ -0,0 +1,292 @@
+package com.haifachagwey.springrest.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.haifachagwey.springrest.models.GradebookChange;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Pushes committed change feed entries to Server-Sent Events subscribers, for the whole class or for one student
+@Service
+public class GradebookEventBroadcaster {
+
+    // Sent in place of an event so connections that went away are noticed and proxies keep idle ones open
+    private static final Event HEARTBEAT = new Event(0, null, null);
+
+    private final Set<Subscriber> classSubscribers = ConcurrentHashMap.newKeySet();
+
+    private final Map<Integer, Set<Subscriber>> studentSubscribers = new ConcurrentHashMap<>();
+
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${gradebook.events.buffer-size:256}")
+    private int bufferSize;
+
+    @Value("${gradebook.events.dispatcher-threads:4}")
+    private int dispatcherThreads;
+
+    @Value("${gradebook.events.send-timeout-ms:10000}")
+    private long sendTimeoutMillis;
+
+    private ThreadPoolExecutor dispatcher;
+
+    private Counter evictions;
+
+    @PostConstruct
+    public void startDispatcher() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        dispatcher = new ThreadPoolExecutor(dispatcherThreads, dispatcherThreads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "gradebook-events-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        Gauge.builder("gradebook.events.subscribers", subscriberCount, AtomicInteger::get)
+                .description("Open Server-Sent Events connections")
+                .register(meterRegistry);
+        evictions = Counter.builder("gradebook.events.evictions")
+                .description("Subscribers disconnected because their buffer filled up or a write to them stalled")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void stopDispatcher() {
+        dispatcher.shutdownNow();
+    }
+
+    // A null student id subscribes to the whole class
+    public void subscribe(Integer studentId, SseEmitter emitter) {
+        Subscriber subscriber = new Subscriber(studentId, emitter);
+        if (studentId == null) {
+            classSubscribers.add(subscriber);
+        } else {
+            studentSubscribers.computeIfAbsent(studentId, id -> ConcurrentHashMap.newKeySet()).add(subscriber);
+        }
+        subscriberCount.incrementAndGet();
+        emitter.onCompletion(() -> remove(subscriber));
+        emitter.onTimeout(() -> remove(subscriber));
+        emitter.onError(exc -> remove(subscriber));
+    }
+
+    public int getSubscriberCount() {
+        return subscriberCount.get();
+    }
+
+    public long getEvictionCount() {
+        return (long) evictions.count();
+    }
+
+    // Called once the changes have committed. Never blocks: each entry is serialised once and offered to every
+    // subscriber's bounded buffer, which the dispatcher threads drain.
+    public void publish(List<GradebookChange> changes) {
+        if (subscriberCount.get() == 0) {
+            return;
+        }
+        for (GradebookChange change : changes) {
+            Event event;
+            try {
+                event = new Event(change.getVersion(), change.getType().name(), objectMapper.writeValueAsString(change));
+            } catch (JsonProcessingException exc) {
+                throw new IllegalStateException(exc);
+            }
+            for (Subscriber subscriber : classSubscribers) {
+                subscriber.offer(event);
+            }
+            Set<Subscriber> subscribers = studentSubscribers.get(change.getStudentId());
+            if (subscribers != null) {
+                for (Subscriber subscriber : subscribers) {
+                    subscriber.offer(event);
+                }
+            }
+        }
+    }
+
+    @Scheduled(initialDelayString = "${gradebook.events.heartbeat-interval-ms:15000}",
+            fixedDelayString = "${gradebook.events.heartbeat-interval-ms:15000}")
+    public void sendHeartbeats() {
+        for (Subscriber subscriber : classSubscribers) {
+            subscriber.offer(HEARTBEAT);
+        }
+        for (Set<Subscriber> subscribers : studentSubscribers.values()) {
+            for (Subscriber subscriber : subscribers) {
+                subscriber.offer(HEARTBEAT);
+            }
+        }
+    }
+
+    // Never touches the emitter itself: its methods are synchronized, and the stuck write is holding the lock.
+    // The dispatcher thread completes it once the write returns or fails.
+    @Scheduled(initialDelayString = "${gradebook.events.send-timeout-ms:10000}",
+            fixedDelayString = "${gradebook.events.send-timeout-ms:10000}")
+    public void dropStalledSubscribers() {
+        long now = System.nanoTime();
+        for (Subscriber subscriber : classSubscribers) {
+            subscriber.dropIfStalled(now);
+        }
+        for (Set<Subscriber> subscribers : studentSubscribers.values()) {
+            for (Subscriber subscriber : subscribers) {
+                subscriber.dropIfStalled(now);
+            }
+        }
+    }
+
+    // Grow the maximum before the core size and shrink it after, as the core size may never exceed it
+    private synchronized void addDispatcherThread() {
+        dispatcher.setMaximumPoolSize(dispatcher.getMaximumPoolSize() + 1);
+        dispatcher.setCorePoolSize(dispatcher.getCorePoolSize() + 1);
+    }
+
+    private synchronized void removeDispatcherThread() {
+        dispatcher.setCorePoolSize(dispatcher.getCorePoolSize() - 1);
+        dispatcher.setMaximumPoolSize(dispatcher.getMaximumPoolSize() - 1);
+    }
+
+    private boolean remove(Subscriber subscriber) {
+        boolean removed;
+        if (subscriber.studentId == null) {
+            removed = classSubscribers.remove(subscriber);
+        } else {
+            AtomicBoolean removedFromStudent = new AtomicBoolean();
+            studentSubscribers.computeIfPresent(subscriber.studentId, (id, subscribers) -> {
+                removedFromStudent.set(subscribers.remove(subscriber));
+                return subscribers.isEmpty() ? null : subscribers;
+            });
+            removed = removedFromStudent.get();
+        }
+        if (removed) {
+            subscriberCount.decrementAndGet();
+        }
+        subscriber.closed = true;
+        return removed;
+    }
+
+    private record Event(long version, String name, String data) {
+    }
+
+    // One connection. At most one dispatcher thread drains it at a time, so events go out in the order offered.
+    private final class Subscriber implements Runnable {
+
+        private final Integer studentId;
+
+        private final SseEmitter emitter;
+
+        private final BlockingQueue<Event> buffer;
+
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private volatile boolean closed;
+
+        // When the write in progress started, by System.nanoTime, or 0 between writes. Guarded by this subscriber,
+        // together with stalled, so a write cannot finish unnoticed while it is being declared stuck.
+        private long sendingSince;
+
+        private boolean stalled;
+
+        Subscriber(Integer studentId, SseEmitter emitter) {
+            this.studentId = studentId;
+            this.emitter = emitter;
+            this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        }
+
+        // A full buffer means the client cannot keep up: it is dropped and catches up from GET /changes on reconnecting
+        void offer(Event event) {
+            if (closed) {
+                return;
+            }
+            if (!buffer.offer(event)) {
+                // The connection is only completed by the dispatcher, which may be blocked writing to it right now
+                evictions.increment();
+                remove(this);
+            }
+            schedule();
+        }
+
+        @Override
+        public void run() {
+            try {
+                Event event;
+                while (!closed && (event = buffer.poll()) != null) {
+                    sending(System.nanoTime());
+                    try {
+                        if (event == HEARTBEAT) {
+                            emitter.send(SseEmitter.event().comment("heartbeat"));
+                        } else {
+                            emitter.send(SseEmitter.event().id(Long.toString(event.version())).name(event.name())
+                                    .data(event.data(), MediaType.APPLICATION_JSON));
+                        }
+                    } finally {
+                        sending(0);
+                    }
+                }
+            } catch (IOException | IllegalStateException exc) {
+                // The client went away; the emitter's error callback has the rest
+                remove(this);
+            }
+            if (stalled) {
+                // Only this run can still be using the thread added in its place
+                removeDispatcherThread();
+            }
+            if (closed) {
+                buffer.clear();
+                emitter.complete();
+                return;
+            }
+            scheduled.set(false);
+            // Something offered after the last poll but before the flag was cleared would otherwise wait for the next event
+            if (!buffer.isEmpty()) {
+                schedule();
+            }
+        }
+
+        // The pool gets a thread in place of the stuck one until its write gives up, so stalled clients never take
+        // dispatcher threads from the others
+        synchronized void dropIfStalled(long now) {
+            if (sendingSince == 0 || stalled || now - sendingSince < TimeUnit.MILLISECONDS.toNanos(sendTimeoutMillis)) {
+                return;
+            }
+            stalled = true;
+            addDispatcherThread();
+            if (remove(this)) {
+                evictions.increment();
+            }
+        }
+
+        private synchronized void sending(long since) {
+            sendingSince = since;
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                dispatcher.execute(this);
+            }
+        }
+    }
+}
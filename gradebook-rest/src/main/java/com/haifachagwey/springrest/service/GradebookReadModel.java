@@ -0,0 +1,150 @@
+package com.haifachagwey.springrest.service;
+
+import com.haifachagwey.springrest.models.GradebookCollegeStudent;
+import com.haifachagwey.springrest.models.StudentGrades;
+import com.haifachagwey.springrest.models.SubjectGrade;
+import com.haifachagwey.springrest.models.Subject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntPredicate;
+
+// The whole gradebook held in memory for GET /, patched after each committed write and rebuilt periodically
+@Service
+public class GradebookReadModel {
+
+    private static final int RELOAD_CHUNK_SIZE = 1000;
+
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Value("${gradebook.read-model.enabled:true}")
+    private boolean enabled;
+
+    // Null until the first build, or when the read model is switched off; callers then go to the database
+    public List<GradebookCollegeStudent> getStudents() {
+        Snapshot current = snapshot.get();
+        return current == null ? null : current.students;
+    }
+
+    // Goes up by one with every snapshot that replaces the previous one, 0 before the first build
+    public long getVersion() {
+        Snapshot current = snapshot.get();
+        return current == null ? 0 : current.version;
+    }
+
+    public void studentChanged(int studentId) {
+        if (enabled) {
+            AfterCommit.run(() -> reload(List.of(studentId)));
+        }
+    }
+
+    public void studentsChanged(Collection<Integer> studentIds) {
+        if (enabled) {
+            List<Integer> changed = new ArrayList<>(studentIds);
+            AfterCommit.run(() -> reload(changed));
+        }
+    }
+
+    public void studentRemoved(int studentId) {
+        if (enabled) {
+            AfterCommit.run(() -> patch(id -> id == studentId, List.of()));
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${gradebook.read-model.rebuild-interval-ms:300000}",
+            fixedDelayString = "${gradebook.read-model.rebuild-interval-ms:300000}")
+    public synchronized void rebuild() {
+        if (enabled) {
+            Snapshot current = snapshot.get();
+            snapshot.set(new Snapshot(current == null ? 1 : current.version + 1,
+                    load("%s > ?", new Object[] {Integer.MIN_VALUE})));
+        }
+    }
+
+    // Writers take turns on this object, so a later re-read always lands after an earlier one
+    private synchronized void reload(List<Integer> studentIds) {
+        if (snapshot.get() == null) {
+            // Not built yet; the first build reads the change anyway
+            return;
+        }
+        for (int from = 0; from < studentIds.size(); from += RELOAD_CHUNK_SIZE) {
+            List<Integer> chunk = studentIds.subList(from, Math.min(from + RELOAD_CHUNK_SIZE, studentIds.size()));
+            Set<Integer> stale = new HashSet<>(chunk);
+            patch(stale::contains, load("%s in (" + String.join(",", Collections.nCopies(chunk.size(), "?")) + ")", chunk.toArray()));
+        }
+    }
+
+    // Drops the stale students from a copy of the snapshot and merges the reloaded ones in, keeping id order
+    private synchronized void patch(IntPredicate stale, List<GradebookCollegeStudent> reloaded) {
+        Snapshot current = snapshot.get();
+        if (current == null) {
+            return;
+        }
+        List<GradebookCollegeStudent> merged = new ArrayList<>(current.students.size() + reloaded.size());
+        int next = 0;
+        for (GradebookCollegeStudent student : current.students) {
+            while (next < reloaded.size() && reloaded.get(next).getId() < student.getId()) {
+                merged.add(reloaded.get(next++));
+            }
+            if (!stale.test(student.getId())) {
+                merged.add(student);
+            }
+        }
+        merged.addAll(reloaded.subList(next, reloaded.size()));
+        snapshot.set(new Snapshot(current.version + 1, merged));
+    }
+
+    // The students whose id matches the condition, with all of their grades, in id order. The condition is a
+    // format string that gets the id column's name.
+    private List<GradebookCollegeStudent> load(String condition, Object[] parameters) {
+
+        Map<Integer, List<SubjectGrade>> gradesByStudentId = new HashMap<>();
+        jdbc.query("select subject, id, student_id, grade from grade where " + String.format(condition, "student_id") + " order by subject, id",
+                (RowCallbackHandler) row -> {
+                    SubjectGrade grade = Subject.fromCode(row.getInt(1)).newGrade(row.getDouble(4), row.getInt(3));
+                    grade.setId(row.getInt(2));
+                    gradesByStudentId.computeIfAbsent(row.getInt(3), studentId -> new ArrayList<>()).add(grade);
+                }, parameters);
+
+        List<GradebookCollegeStudent> students = new ArrayList<>();
+        jdbc.query("select id, firstname, lastname, email_address from student where " + String.format(condition, "id") + " order by id",
+                (RowCallbackHandler) row -> {
+                    int id = row.getInt(1);
+                    StudentGrades studentGrades = StudentGrades.of(gradesByStudentId.getOrDefault(id, List.of()));
+                    students.add(new GradebookCollegeStudent(id, row.getString(2), row.getString(3), row.getString(4), studentGrades));
+                }, parameters);
+        return students;
+    }
+
+    // Never changed once published; a reader holding one keeps a consistent view however many writes follow
+    private static final class Snapshot {
+
+        private final long version;
+
+        private final List<GradebookCollegeStudent> students;
+
+        Snapshot(long version, List<GradebookCollegeStudent> students) {
+            this.version = version;
+            this.students = Collections.unmodifiableList(students);
+        }
+    }
+}
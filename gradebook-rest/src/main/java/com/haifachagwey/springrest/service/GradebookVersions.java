@@ -0,0 +1,62 @@
+package com.haifachagwey.springrest.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// In-memory versions behind the ETags of GET / and GET /studentInformation/{id}, bumped by GradebookCache
+@Component
+public class GradebookVersions {
+
+    // Part of every tag, so tags handed out before a restart never match again
+    private final String epoch = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+
+    private final AtomicLong gradebookVersion = new AtomicLong();
+
+    // Deleted students keep their entry: dropping it would take them back to 0 and match a tag from before
+    private final Map<Integer, Long> studentVersions = new ConcurrentHashMap<>();
+
+    void studentChanged(int studentId) {
+        long version = gradebookVersion.incrementAndGet();
+        studentVersions.merge(studentId, version, Math::max);
+    }
+
+    void studentsChanged(Collection<Integer> studentIds) {
+        long version = gradebookVersion.incrementAndGet();
+        for (Integer studentId : studentIds) {
+            studentVersions.merge(studentId, version, Math::max);
+        }
+    }
+
+    // New students have no tag out there yet, so only the gradebook moves
+    void gradebookChanged() {
+        gradebookVersion.incrementAndGet();
+    }
+
+    public long getGradebookVersion() {
+        return gradebookVersion.get();
+    }
+
+    public long getStudentVersion(int studentId) {
+        return studentVersions.getOrDefault(studentId, 0L);
+    }
+
+    public String getGradebookETag() {
+        return gradebookETag(getGradebookVersion());
+    }
+
+    public String getStudentETag(int studentId) {
+        return studentETag(studentId, getStudentVersion(studentId));
+    }
+
+    public String gradebookETag(long version) {
+        return "\"" + epoch + "-" + version + "\"";
+    }
+
+    public String studentETag(int studentId, long version) {
+        return "\"" + epoch + "-" + studentId + "-" + version + "\"";
+    }
+}
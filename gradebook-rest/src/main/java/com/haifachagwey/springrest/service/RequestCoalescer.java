@@ -0,0 +1,40 @@
+package com.haifachagwey.springrest.service;
+
+import com.haifachagwey.springrest.models.Gradebook;
+import com.haifachagwey.springrest.models.GradebookCollegeStudent;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.function.Supplier;
+
+// Merges identical reads that arrive together, such as every client refreshing a student right after a teacher
+// posts their grades: concurrent cache misses on one student, or on the whole gradebook, share a single load.
+// GradebookCache passes its generation along, so nobody joins a load that a write has since made stale.
+@Component
+public class RequestCoalescer {
+
+    private static final String GRADEBOOK = "gradebook";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private SingleFlight<Integer, GradebookCollegeStudent> studentInformationLoads;
+
+    private SingleFlight<String, Gradebook> gradebookLoads;
+
+    @PostConstruct
+    public void registerMetrics() {
+        studentInformationLoads = new SingleFlight<>(GradebookCache.STUDENT_INFORMATION, meterRegistry);
+        gradebookLoads = new SingleFlight<>(GradebookCache.GRADEBOOK, meterRegistry);
+    }
+
+    public GradebookCollegeStudent studentInformation(int id, long generation, Supplier<GradebookCollegeStudent> loader) {
+        return studentInformationLoads.load(id, generation, loader);
+    }
+
+    public Gradebook gradebook(long generation, Supplier<Gradebook> loader) {
+        return gradebookLoads.load(GRADEBOOK, generation, loader);
+    }
+}
@@ -0,0 +1,97 @@
+package com.haifachagwey.springrest.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+// Runs at most one load per key at a time; callers that overlap a running load wait for it and share its result
+public final class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, Flight<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter loads;
+
+    private final Counter coalesced;
+
+    public SingleFlight(String name, MeterRegistry meterRegistry) {
+        loads = Counter.builder("gradebook.coalescing.loads")
+                .tag("name", name)
+                .description("Loads that ran")
+                .register(meterRegistry);
+        coalesced = Counter.builder("gradebook.coalescing.coalesced")
+                .tag("name", name)
+                .description("Requests that waited for a load already running instead of starting their own")
+                .register(meterRegistry);
+    }
+
+    public V load(K key, Supplier<V> loader) {
+        return load(key, 0, loader);
+    }
+
+    // A load started before a write moved the generation on may have read the old data, so a caller with a later
+    // generation starts its own and takes the key over; callers already waiting on the older load keep it
+    public V load(K key, long generation, Supplier<V> loader) {
+        Flight<V> flight = new Flight<>(generation);
+        while (true) {
+            Flight<V> running = inFlight.putIfAbsent(key, flight);
+            if (running == null) {
+                break;
+            }
+            if (running.generation >= generation) {
+                coalesced.increment();
+                return join(running.result);
+            }
+            if (inFlight.replace(key, running, flight)) {
+                break;
+            }
+        }
+        loads.increment();
+        try {
+            V value = loader.get();
+            flight.result.complete(value);
+            return value;
+        } catch (RuntimeException | Error exc) {
+            flight.result.completeExceptionally(exc);
+            throw exc;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    public long getLoadCount() {
+        return (long) loads.count();
+    }
+
+    public long getCoalescedCount() {
+        return (long) coalesced.count();
+    }
+
+    private static <V> V join(CompletableFuture<V> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException exc) {
+            if (exc.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) exc.getCause();
+            }
+            if (exc.getCause() instanceof Error) {
+                throw (Error) exc.getCause();
+            }
+            throw exc;
+        }
+    }
+
+    private static final class Flight<V> {
+
+        private final long generation;
+
+        private final CompletableFuture<V> result = new CompletableFuture<>();
+
+        Flight(long generation) {
+            this.generation = generation;
+        }
+    }
+}
@@ -1,260 +1,517 @@
 package com.haifachagwey.springrest.service;
 
+import com.haifachagwey.springrest.exceptionhandling.StudentAlreadyExistsException;
 import com.haifachagwey.springrest.models.*;
-import com.haifachagwey.springrest.repository.HistoryGradesDao;
-import com.haifachagwey.springrest.repository.MathGradesDao;
-import com.haifachagwey.springrest.repository.ScienceGradesDao;
+import com.haifachagwey.springrest.repository.GradeDao;
 import com.haifachagwey.springrest.repository.StudentDao;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Service;
 
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.ui.Model;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 @Transactional
 public class StudentAndGradeService {
 
+	public static final int DEFAULT_PAGE_SIZE = 50;
+
+	public static final int MAX_PAGE_SIZE = 500;
+
+	private static final int EXPORT_CLEAR_INTERVAL = 500;
+
+	public static final int MAX_GRADE_BATCH_SIZE = 10_000;
+
+	// Matches spring.jpa.properties.hibernate.jdbc.batch_size
+	private static final int INSERT_BATCH_SIZE = 500;
+
+	// The student row with one row per grade, or a single grade-less row if there are none
+	private static final String STUDENT_INFORMATION_QUERY = "select s.id, s.firstname, s.lastname, s.email_address, g.subject, g.id as grade_id, g.grade"
+			+ " from student s left join grade g on g.student_id = s.id where s.id = :id order by g.subject, g.id";
+
 	@Autowired
 	private StudentDao studentDao;
 
 	@Autowired
-	private MathGradesDao mathGradeDao;
+	private GradeDao gradeDao;
 
 	@Autowired
-	private ScienceGradesDao scienceGradeDao;
+	private JdbcTemplate jdbc;
 
 	@Autowired
-	private HistoryGradesDao historyGradeDao;
+	private GradebookCache gradebookCache;
 
 	@Autowired
-	@Qualifier("mathGrades")
-	private MathGrade mathGrade;
+	private GradeAggregateService gradeAggregateService;
 
 	@Autowired
-	@Qualifier("scienceGrades")
-	private ScienceGrade scienceGrade;
+	private GradeRankingService gradeRankingService;
 
 	@Autowired
-	@Qualifier("historyGrades")
-	private HistoryGrade historyGrade;
+	private GradebookReadModel gradebookReadModel;
 
 	@Autowired
-    StudentGrades studentGrades;
+	private GradebookChangeLog gradebookChangeLog;
+
 
-	public void createStudent(String firstname, String lastname, String emailAddress){
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	public int createStudent(String firstname, String lastname, String emailAddress){
 		CollegeStudent student = new CollegeStudent(firstname, lastname, emailAddress);
-		studentDao.save(student);
+		int id;
+		try {
+			id = studentDao.save(student).getId();
+		} catch (DataIntegrityViolationException exc) {
+			throw new StudentAlreadyExistsException("A student with email address " + emailAddress + " already exists", exc);
+		}
+		gradebookReadModel.studentChanged(id);
+		gradebookCache.evictGradebook();
+		gradebookChangeLog.record(GradebookChange.studentCreated(id, firstname, lastname, emailAddress));
+		return id;
+	}
+
+	// One chunk of a bulk import, written as a single JDBC batch. The student table uses an IDENTITY key,
+	// which stops Hibernate from batching inserts, so the rows bypass the persistence context.
+	public void createStudents(List<CollegeStudent> students) {
+		List<Integer> ids = insertReturningIds("insert into student(firstname,lastname,email_address) values (?,?,?)", students,
+				(statement, student) -> {
+					statement.setString(1, student.getFirstname());
+					statement.setString(2, student.getLastname());
+					statement.setString(3, student.getEmailAddress());
+				});
+		gradebookReadModel.studentsChanged(ids);
+		gradebookCache.evictGradebook();
+		List<GradebookChange> changes = new ArrayList<>(students.size());
+		for (int i = 0; i < students.size(); i++) {
+			CollegeStudent student = students.get(i);
+			changes.add(GradebookChange.studentCreated(ids.get(i), student.getFirstname(), student.getLastname(), student.getEmailAddress()));
+		}
+		gradebookChangeLog.record(changes);
 	}
 
+	// A constant number of statements however many grades the student has
 	public void deleteStudent(int id){
-		if (checkIfStudentExists(id)) {
-			studentDao.deleteById(id);
-			mathGradeDao.deleteByStudentId(id);
-			scienceGradeDao.deleteByStudentId(id);
-			historyGradeDao.deleteByStudentId(id);
+		if (studentDao.deleteStudentById(id) > 0) {
+			gradeDao.deleteByStudentId(id);
+			gradeAggregateService.removeStudent(id);
+			gradeRankingService.studentRemoved(id);
+			gradebookReadModel.studentRemoved(id);
+			gradebookCache.evictStudent(id);
+			gradebookChangeLog.record(GradebookChange.studentDeleted(id));
 		}
 	}
 
+	// A count query rather than loading the student into the persistence context
+	@Transactional(readOnly = true)
 	public boolean checkIfStudentExists(int id){
-		Optional<CollegeStudent> student = studentDao.findById(id);
-		if (student.isPresent()) {
-			return true;
-		}
-		return false;
+		return studentDao.existsById(id);
 	}
 
+	// The student and every one of their grades in a single round trip, read from the grade table's student index
+	@Transactional(readOnly = true)
 	public GradebookCollegeStudent studentInformation(int id) {
-		Optional<CollegeStudent> student = studentDao.findById(id);
 
-		if (!student.isPresent()) {
+		@SuppressWarnings("unchecked")
+		List<Object[]> rows = entityManager.createNativeQuery(STUDENT_INFORMATION_QUERY)
+				.setParameter("id", id)
+				.getResultList();
+
+		if (rows.isEmpty()) {
 			return null;
 		}
 
-		Iterable<MathGrade> mathGrades = mathGradeDao.findGradeByStudentId(id);
+		List<SubjectGrade> grades = new ArrayList<>(rows.size());
+		for (Object[] row : rows) {
+			if (row[4] == null) {
+				continue;
+			}
+			SubjectGrade grade = Subject.fromCode(((Number) row[4]).intValue()).newGrade(((Number) row[6]).doubleValue(), id);
+			grade.setId(((Number) row[5]).intValue());
+			grades.add(grade);
+		}
+		StudentGrades studentGrades = StudentGrades.of(grades);
 
-		Iterable<ScienceGrade> scienceGrades = scienceGradeDao.findGradeByStudentId(id);
+		Object[] student = rows.get(0);
+		return new GradebookCollegeStudent(((Number) student[0]).intValue(), (String) student[1], (String) student[2],
+				(String) student[3], studentGrades);
+	}
 
-		Iterable<HistoryGrade> historyGrades = historyGradeDao.findGradeByStudentId(id);
+	@Transactional(readOnly = true)
+	public boolean checkIfGradeExists(int id, String gradeType){
+		Subject subject = Subject.fromGradeType(gradeType);
+		return subject != null && gradeDao.existsById(new SubjectGrade.Key(subject, id));
+	}
 
-		List<Grade> mathGradesList = new ArrayList<>();
-		mathGrades.forEach(mathGradesList::add);
+	public int deleteGrade(int id, String gradeType) {
 
-		List<Grade> scienceGradesList = new ArrayList<>();
-		scienceGrades.forEach(scienceGradesList::add);
+		Subject subject = Subject.fromGradeType(gradeType);
+		if (subject == null) {
+			return 0;
+		}
 
-		List<Grade> historyGradesList = new ArrayList<>();
-		historyGrades.forEach(historyGradesList::add);
+		Optional<SubjectGrade> grade = gradeDao.findById(new SubjectGrade.Key(subject, id));
+		if (!grade.isPresent()) {
+			return 0;
+		}
 
+		gradeDao.delete(grade.get());
+		entityManager.flush();
+		gradeAggregateService.recompute(subject, grade.get().getStudentId());
+		gradeRankingService.studentChanged(subject, grade.get().getStudentId());
+		gradebookReadModel.studentChanged(grade.get().getStudentId());
+		gradebookCache.evictStudent(grade.get().getStudentId());
+		gradebookChangeLog.record(GradebookChange.gradeDeleted(subject, id, grade.get().getStudentId(), grade.get().getGrade()));
+		return grade.get().getStudentId();
+	}
 
-		studentGrades.setMathGradeResults(mathGradesList);
-		studentGrades.setScienceGradeResults(scienceGradesList);
-		studentGrades.setHistoryGradeResults(historyGradesList);
+	public boolean createGrade(double grade, int studentId, String gradeType) {
+		Subject subject = Subject.fromGradeType(gradeType);
+		if (subject == null || !(grade >= 0 && grade <= 100)) {
+			return false;
+		}
+		int id = insertGrade(subject, studentId, grade);
+		gradeAggregateService.add(subject, studentId, grade);
+		gradeRankingService.studentChanged(subject, studentId);
+		gradebookReadModel.studentChanged(studentId);
+		gradebookCache.evictStudent(studentId);
+		gradebookChangeLog.record(GradebookChange.gradeCreated(subject, id, studentId, grade));
+		return true;
+	}
 
-		GradebookCollegeStudent gradebookCollegeStudent = new GradebookCollegeStudent(student.get().getId(), student.get().getFirstname(), student.get().getLastname(),
-				student.get().getEmailAddress(), studentGrades);
+	// The id is numbered by the database, which hands it back as the generated key
+	private int insertGrade(Subject subject, int studentId, double grade) {
+		KeyHolder keyHolder = new GeneratedKeyHolder();
+		jdbc.update(connection -> {
+			PreparedStatement statement = connection.prepareStatement("insert into grade(subject,student_id,grade) values (?,?,?)",
+					new String[] {"id"});
+			statement.setInt(1, subject.getCode());
+			statement.setInt(2, studentId);
+			statement.setDouble(3, grade);
+			return statement;
+		}, keyHolder);
+		return keyHolder.getKey().intValue();
+	}
 
-		return gradebookCollegeStudent;
+	// Class-wide figures per subject in one grouped statement, so a row per subject crosses the wire
+	@Transactional(readOnly = true)
+	public List<GradeSummary> getSubjectSummaries() {
+		Map<Subject, GradeSummary> summariesBySubject = new EnumMap<>(Subject.class);
+		for (GradeSummary summary : gradeDao.summarizeBySubject()) {
+			summariesBySubject.put(Subject.fromGradeType(summary.getGradeType()), summary);
+		}
+		List<GradeSummary> summaries = new ArrayList<>();
+		for (Subject subject : Subject.values()) {
+			// A subject nobody has a grade in gets no row from the database
+			GradeSummary summary = summariesBySubject.getOrDefault(subject, new GradeSummary(0, null, null, null));
+			summary.setGradeType(subject.getGradeType());
+			summaries.add(summary);
+		}
+		return summaries;
 	}
 
-	public boolean checkIfGradeExists(int id, String gradeType){
-		if (gradeType.equals("math")) {
-			Optional<MathGrade> grade = mathGradeDao.findById(id);
-			if (grade.isPresent()) {
-				return true;
-			}
+	// Per-student figures in one subject for at most limit students with an id greater than afterId, in id order.
+	// The page of students is fetched first so the database only aggregates that id range; a student with no grades
+	// in the subject gets a zero count. Returns null for an unknown grade type.
+	@Transactional(readOnly = true)
+	public List<GradeSummary> getStudentSummaries(String gradeType, int afterId, int limit) {
+
+		Subject subject = Subject.fromGradeType(gradeType);
+		if (subject == null) {
+			return null;
 		}
-		if (gradeType.equals("science")) {
-			Optional<ScienceGrade> grade = scienceGradeDao.findById(id);
-			if (grade.isPresent()) {
-				return true;
-			}
+
+		int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+
+		List<StudentRow> students = studentDao.findRowsByIdGreaterThan(afterId, PageRequest.of(0, pageSize));
+
+		if (students.isEmpty()) {
+			return new ArrayList<>();
 		}
-		if (gradeType.equals("history")) {
-			Optional<HistoryGrade> grade = historyGradeDao.findById(id);
-			if (grade.isPresent()) {
-				return true;
-			}
+
+		int firstId = students.get(0).id();
+		int lastId = students.get(students.size() - 1).id();
+
+		Map<Integer, GradeSummary> summariesByStudentId = new HashMap<>();
+		for (GradeSummary summary : gradeDao.summarizeByStudentIdBetween(subject.getCode(), firstId, lastId)) {
+			summariesByStudentId.put(summary.getStudentId(), summary);
 		}
 
-		return false;
+		List<GradeSummary> summaries = new ArrayList<>(students.size());
+		for (StudentRow student : students) {
+			GradeSummary summary = summariesByStudentId.get(student.id());
+			if (summary == null) {
+				summary = new GradeSummary(student.id(), 0, null, null, null);
+			}
+			summary.setGradeType(subject.getGradeType());
+			summaries.add(summary);
+		}
+		return summaries;
 	}
 
-	public int deleteGrade(int id, String gradeType) {
+	// Bulk upload: every student id is checked with one query, then each subject's rows go in as JDBC batches.
+	// The database numbers grade ids, which stops Hibernate from batching inserts, hence plain JDBC here.
+	// Bad rows are reported back by position and the good ones are still inserted.
+	public GradeBatchResult createGrades(List<GradeSubmission> grades) {
 
-		int studentId = 0;
+		if (grades.size() > MAX_GRADE_BATCH_SIZE) {
+			throw new IllegalArgumentException("A batch may hold at most " + MAX_GRADE_BATCH_SIZE + " grades");
+		}
 
-		if (gradeType.equals("math")) {
-			Optional<MathGrade> grade = mathGradeDao.findById(id);
-			if (!grade.isPresent()) {
-				return studentId;
+		Set<Integer> studentIds = new HashSet<>();
+		for (GradeSubmission grade : grades) {
+			if (grade != null && grade.getStudentId() != null) {
+				studentIds.add(grade.getStudentId());
 			}
-			studentId = grade.get().getStudentId();
-			mathGradeDao.deleteById(id);
 		}
+		Set<Integer> existingStudentIds = studentIds.isEmpty() ? Set.of() : studentDao.findExistingIds(studentIds);
+
+		GradeBatchResult result = new GradeBatchResult();
+		Map<Subject, List<Object[]>> gradesBySubject = new EnumMap<>(Subject.class);
 
-		if (gradeType.equals("science")) {
-			Optional<ScienceGrade> grade = scienceGradeDao.findById(id);
-			if (!grade.isPresent()) {
-				return studentId;
+		for (int row = 0; row < grades.size(); row++) {
+			GradeSubmission grade = grades.get(row);
+			if (grade == null || grade.getGrade() == null || grade.getStudentId() == null) {
+				result.reject(row, "grade and studentId are required");
+				continue;
+			}
+			if (!(grade.getGrade() >= 0 && grade.getGrade() <= 100)) {
+				result.reject(row, "Grade must be between 0 and 100");
+				continue;
 			}
-			studentId = grade.get().getStudentId();
-			scienceGradeDao.deleteById(id);
+			if (!existingStudentIds.contains(grade.getStudentId())) {
+				result.reject(row, "Student was not found");
+				continue;
+			}
+			Subject subject = Subject.fromGradeType(grade.getGradeType());
+			if (subject == null) {
+				result.reject(row, "Unknown grade type");
+				continue;
+			}
+			gradesBySubject.computeIfAbsent(subject, s -> new ArrayList<>()).add(new Object[] {grade.getStudentId(), grade.getGrade()});
 		}
 
-		if (gradeType.equals("history")) {
-			Optional<HistoryGrade> grade = historyGradeDao.findById(id);
-			if (!grade.isPresent()) {
-				return studentId;
+		int accepted = 0;
+		Set<Integer> gradedStudentIds = new HashSet<>();
+		List<GradebookChange> changes = new ArrayList<>();
+		for (Map.Entry<Subject, List<Object[]>> subjectGrades : gradesBySubject.entrySet()) {
+			List<Integer> ids = insertGrades(subjectGrades.getKey(), subjectGrades.getValue());
+			accepted += subjectGrades.getValue().size();
+			// Folded per student first so the aggregate table sees one update per student rather than one per grade
+			Map<Integer, GradeAggregate> aggregatesByStudentId = new HashMap<>();
+			for (int i = 0; i < subjectGrades.getValue().size(); i++) {
+				Object[] values = subjectGrades.getValue().get(i);
+				int studentId = (Integer) values[0];
+				gradedStudentIds.add(studentId);
+				changes.add(GradebookChange.gradeCreated(subjectGrades.getKey(), ids.get(i), studentId, (Double) values[1]));
+				aggregatesByStudentId.computeIfAbsent(studentId,
+						id -> new GradeAggregate(id, subjectGrades.getKey().getCode(), 0, 0, null, null)).add((Double) values[1]);
 			}
-			studentId = grade.get().getStudentId();
-			historyGradeDao.deleteById(id);
+			gradeAggregateService.addAll(subjectGrades.getKey(), aggregatesByStudentId);
+			gradeRankingService.studentsChanged(subjectGrades.getKey(), aggregatesByStudentId.keySet());
+		}
+		if (!gradedStudentIds.isEmpty()) {
+			gradebookReadModel.studentsChanged(gradedStudentIds);
+			gradebookCache.evictStudents(gradedStudentIds);
 		}
+		gradebookChangeLog.record(changes);
 
-		return studentId;
+		result.setAccepted(accepted);
+		return result;
 	}
 
-	public boolean createGrade(double grade, int studentId, String gradeType) {
-		if (grade >= 0 && grade <= 100) {
-			if (gradeType.equals("math")) {
-				mathGrade.setId(0);
-				mathGrade.setGrade(grade);
-				mathGrade.setStudentId(studentId);
-				mathGradeDao.save(mathGrade);
-				return true;
-			}
-
-			if (gradeType.equals("science")) {
-				scienceGrade.setId(0);
-				scienceGrade.setGrade(grade);
-				scienceGrade.setStudentId(studentId);
-				scienceGradeDao.save(scienceGrade);
-				return true;
-			}
+	private List<Integer> insertGrades(Subject subject, List<Object[]> grades) {
+		return insertReturningIds("insert into grade(subject,student_id,grade) values (?,?,?)", grades,
+				(statement, values) -> {
+					statement.setInt(1, subject.getCode());
+					statement.setInt(2, (Integer) values[0]);
+					statement.setDouble(3, (Double) values[1]);
+				});
+	}
 
-			if (gradeType.equals("history")) {
-				historyGrade.setId(0);
-				historyGrade.setGrade(grade);
-				historyGrade.setStudentId(studentId);
-				historyGradeDao.save(historyGrade);
-				return true;
+	// JDBC batches that hand back the ids the database generated, in row order, so the change log gets exactly
+	// the rows this transaction inserted
+	private <T> List<Integer> insertReturningIds(String sql, List<T> rows, ParameterizedPreparedStatementSetter<T> setter) {
+		return jdbc.execute((ConnectionCallback<List<Integer>>) connection -> {
+			List<Integer> ids = new ArrayList<>(rows.size());
+			try (PreparedStatement statement = connection.prepareStatement(sql, new String[] {"id"})) {
+				for (int from = 0; from < rows.size(); from += INSERT_BATCH_SIZE) {
+					for (T row : rows.subList(from, Math.min(from + INSERT_BATCH_SIZE, rows.size()))) {
+						setter.setValues(statement, row);
+						statement.addBatch();
+					}
+					statement.executeBatch();
+					try (ResultSet keys = statement.getGeneratedKeys()) {
+						while (keys.next()) {
+							ids.add(keys.getInt(1));
+						}
+					}
+				}
 			}
-		}
-		return false;
+			return ids;
+		});
 	}
 
+	// Read-only, and built from constructor projections: nothing enters the persistence context, so there are no
+	// entity snapshots to keep and nothing to dirty-check or flush at the end
+	@Transactional(readOnly = true)
 	public Gradebook getGradebook () {
 
-		Iterable<CollegeStudent> collegeStudents = studentDao.findAll();
+		List<StudentRow> students = studentDao.findAllRows();
 
-		Iterable<MathGrade> mathGrades = mathGradeDao.findAll();
+		Map<Integer, List<SubjectGrade>> gradesByStudentId = groupGradesByStudentId(gradeDao.findAllRows());
 
-		Iterable<ScienceGrade> scienceGrades = scienceGradeDao.findAll();
+		return buildGradebook(students, gradesByStudentId);
+	}
+
+	// One page of the gradebook: at most limit students with an id greater than afterId, in id order
+	@Transactional(readOnly = true)
+	public Gradebook getGradebookPage(int afterId, int limit) {
+
+		int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+
+		List<StudentRow> students = studentDao.findRowsByIdGreaterThan(afterId, PageRequest.of(0, pageSize));
+
+		if (students.isEmpty()) {
+			return new Gradebook();
+		}
 
-		Iterable<HistoryGrade> historyGrades = historyGradeDao.findAll();
+		int firstId = students.get(0).id();
+		int lastId = students.get(students.size() - 1).id();
+
+		Map<Integer, List<SubjectGrade>> gradesByStudentId = groupGradesByStudentId(gradeDao.findRowsByStudentIdBetween(firstId, lastId));
+
+		return buildGradebook(students, gradesByStudentId);
+	}
+
+	private static Gradebook buildGradebook(List<StudentRow> students, Map<Integer, List<SubjectGrade>> gradesByStudentId) {
 
 		Gradebook gradebook = new Gradebook();
 
-		for (CollegeStudent collegeStudent : collegeStudents) {
-			List<Grade> mathGradesPerStudent = new ArrayList<>();
-			List<Grade> scienceGradesPerStudent = new ArrayList<>();
-			List<Grade> historyGradesPerStudent = new ArrayList<>();
+		for (StudentRow student : students) {
+			StudentGrades studentGrades = StudentGrades.of(gradesByStudentId.getOrDefault(student.id(), List.of()));
 
-			for (MathGrade grade : mathGrades) {
-				if (grade.getStudentId() == collegeStudent.getId()) {
-					mathGradesPerStudent.add(grade);
-				}
-			}
-			for (ScienceGrade grade : scienceGrades) {
-				if (grade.getStudentId() == collegeStudent.getId()) {
-					scienceGradesPerStudent.add(grade);
-				}
-			}
+			GradebookCollegeStudent gradebookCollegeStudent = new GradebookCollegeStudent(student.id(), student.firstname(), student.lastname(),
+					student.emailAddress(), studentGrades);
+
+			gradebook.getStudents().add(gradebookCollegeStudent);
+		}
 
-			for (HistoryGrade grade : historyGrades) {
-				if (grade.getStudentId() == collegeStudent.getId()) {
-					historyGradesPerStudent.add(grade);
+		return gradebook;
+	}
+
+	// Walks the students and the grades with forward-only cursors that are both ordered by student id,
+	// merging them one student at a time. Every student goes to the sink as soon as it is assembled and the
+	// persistence context is cleared as we go, so memory use stays flat however large the roster is.
+	@Transactional(readOnly = true)
+	public void exportGradebook(Consumer<GradebookCollegeStudent> sink) {
+
+		try (Stream<CollegeStudent> collegeStudents = studentDao.streamAllByOrderByIdAsc();
+			 Stream<SubjectGrade> grades = gradeDao.streamAllByOrderByStudentIdAscSubjectAscIdAsc()) {
+
+			GradeCursor gradeCursor = new GradeCursor(grades.iterator());
+
+			int exported = 0;
+			Iterator<CollegeStudent> students = collegeStudents.iterator();
+			while (students.hasNext()) {
+				CollegeStudent collegeStudent = students.next();
+
+				StudentGrades studentGrades = StudentGrades.of(gradeCursor.gradesFor(collegeStudent.getId()));
+
+				sink.accept(new GradebookCollegeStudent(collegeStudent.getId(), collegeStudent.getFirstname(), collegeStudent.getLastname(),
+						collegeStudent.getEmailAddress(), studentGrades));
+
+				if (++exported % EXPORT_CLEAR_INTERVAL == 0) {
+					entityManager.clear();
 				}
 			}
+		}
+	}
 
-			studentGrades.setMathGradeResults(mathGradesPerStudent);
-			studentGrades.setScienceGradeResults(scienceGradesPerStudent);
-			studentGrades.setHistoryGradeResults(historyGradesPerStudent);
+	// Grades in student id order, handed out one student at a time
+	private static final class GradeCursor {
 
-			GradebookCollegeStudent gradebookCollegeStudent = new GradebookCollegeStudent(collegeStudent.getId(), collegeStudent.getFirstname(), collegeStudent.getLastname(),
-					collegeStudent.getEmailAddress(), studentGrades);
+		private final Iterator<SubjectGrade> grades;
 
-			gradebook.getStudents().add(gradebookCollegeStudent);
+		private SubjectGrade next;
+
+		GradeCursor(Iterator<SubjectGrade> grades) {
+			this.grades = grades;
+			advance();
 		}
 
-		return gradebook;
+		List<SubjectGrade> gradesFor(int studentId) {
+			// Grades left behind by students that no longer exist are skipped
+			while (next != null && next.getStudentId() < studentId) {
+				advance();
+			}
+			List<SubjectGrade> result = new ArrayList<>();
+			while (next != null && next.getStudentId() == studentId) {
+				result.add(next);
+				advance();
+			}
+			return result;
+		}
+
+		private void advance() {
+			next = grades.hasNext() ? grades.next() : null;
+		}
 	}
 
+	// Buckets grades by student id in a single pass so the gradebook is assembled in linear time. The grades are
+	// plain objects, never attached to the persistence context.
+	private static Map<Integer, List<SubjectGrade>> groupGradesByStudentId(List<GradeRow> rows) {
+		Map<Integer, List<SubjectGrade>> gradesByStudentId = new HashMap<>();
+		for (GradeRow row : rows) {
+			SubjectGrade grade = Subject.fromCode(row.subject()).newGrade(row.grade(), row.studentId());
+			grade.setId(row.id());
+			gradesByStudentId.computeIfAbsent(row.studentId(), studentId -> new ArrayList<>()).add(grade);
+		}
+		return gradesByStudentId;
+	}
+
+	// Averages come straight from the maintained aggregates rather than being recomputed from the grade lists
 	public void configureStudentInformationModel(int id, Model m) {
 
 		GradebookCollegeStudent studentEntity = studentInformation(id);
 
 		m.addAttribute("student", studentEntity);
 
-		if (studentEntity.getStudentGrades().getMathGradeResults().size() > 0) {
-			m.addAttribute("mathAverage", studentEntity.getStudentGrades().findGradePointAverage(studentEntity.getStudentGrades().getMathGradeResults()));
-		} else {
-			m.addAttribute("mathAverage", "N/A");
+		Map<Subject, Object> averages = new EnumMap<>(Subject.class);
+		for (Subject subject : Subject.values()) {
+			averages.put(subject, "N/A");
 		}
-		if (studentEntity.getStudentGrades().getScienceGradeResults().size() > 0) {
-			m.addAttribute("scienceAverage", studentEntity.getStudentGrades().findGradePointAverage(studentEntity.getStudentGrades().getScienceGradeResults()));
-		} else {
-			m.addAttribute("scienceAverage", "N/A");
-		}
-		if (studentEntity.getStudentGrades().getHistoryGradeResults().size() > 0) {
-			m.addAttribute("historyAverage", studentEntity.getStudentGrades().findGradePointAverage(studentEntity.getStudentGrades().getHistoryGradeResults()));
-		} else {
-			m.addAttribute("historyAverage", "N/A");
+		for (GradeAggregate aggregate : gradeAggregateService.findByStudentId(id)) {
+			if (aggregate.getAverage() != null) {
+				averages.put(Subject.fromCode(aggregate.getSubject()), aggregate.getAverage());
+			}
 		}
+
+		m.addAttribute("mathAverage", averages.get(Subject.MATH));
+		m.addAttribute("scienceAverage", averages.get(Subject.SCIENCE));
+		m.addAttribute("historyAverage", averages.get(Subject.HISTORY));
 	}
 }
@@ -0,0 +1,169 @@
+package com.haifachagwey.springrest.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.haifachagwey.springrest.models.CollegeStudent;
+import com.haifachagwey.springrest.models.StudentImportResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// Reads a CSV or NDJSON upload one line at a time and hands the students to StudentAndGradeService in chunks.
+// Each chunk is its own transaction, so only one chunk is ever held in memory and a failure late in a large
+// file does not throw away what was already imported. A chunk the database refuses is reported row by row in
+// the result rather than failing the whole request.
+@Service
+public class StudentImportService {
+
+    public static final MediaType TEXT_CSV = MediaType.parseMediaType("text/csv");
+
+    public static final int MAX_CHUNK_SIZE = 10_000;
+
+    private static final String CSV_HEADER = "firstname,lastname,emailaddress";
+
+    @Autowired
+    private StudentAndGradeService studentService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${gradebook.import.chunk-size:1000}")
+    private int defaultChunkSize;
+
+    public StudentImportResult importStudents(InputStream body, MediaType contentType, Integer chunkSize) throws IOException {
+
+        boolean csv = TEXT_CSV.isCompatibleWith(contentType);
+        if (!csv && !MediaType.APPLICATION_NDJSON.isCompatibleWith(contentType)) {
+            throw new IllegalArgumentException("Students can be imported from text/csv or application/x-ndjson");
+        }
+
+        int size = Math.max(1, Math.min(chunkSize == null ? defaultChunkSize : chunkSize, MAX_CHUNK_SIZE));
+        Charset charset = contentType.getCharset() == null ? StandardCharsets.UTF_8 : contentType.getCharset();
+
+        StudentImportResult result = new StudentImportResult();
+        List<CollegeStudent> chunk = new ArrayList<>(size);
+        List<Long> chunkLines = new ArrayList<>(size);
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, charset));
+        long lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank() || (csv && lineNumber == 1 && isCsvHeader(line))) {
+                continue;
+            }
+
+            CollegeStudent student;
+            try {
+                student = csv ? parseCsv(line) : objectMapper.readValue(line, CollegeStudent.class);
+            } catch (JsonProcessingException | IllegalArgumentException exc) {
+                result.reject(lineNumber, exc instanceof JsonProcessingException ? "Malformed JSON" : exc.getMessage());
+                continue;
+            }
+            if (isBlank(student.getFirstname()) || isBlank(student.getLastname()) || isBlank(student.getEmailAddress())) {
+                result.reject(lineNumber, "firstname, lastname and emailAddress are required");
+                continue;
+            }
+
+            chunk.add(student);
+            chunkLines.add(lineNumber);
+            if (chunk.size() == size) {
+                importChunk(chunk, chunkLines, result);
+                chunk.clear();
+                chunkLines.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            importChunk(chunk, chunkLines, result);
+        }
+
+        return result;
+    }
+
+    // A constraint violation rolls the whole chunk back, so its rows are retried one at a time and only the ones
+    // that clash, with existing students or with each other, are refused. Any other database failure refuses the
+    // chunk as it stands; later chunks are still attempted.
+    private void importChunk(List<CollegeStudent> chunk, List<Long> lines, StudentImportResult result) {
+        try {
+            studentService.createStudents(chunk);
+            result.chunkImported(chunk.size());
+            return;
+        } catch (DataIntegrityViolationException exc) {
+            int imported = 0;
+            for (int i = 0; i < chunk.size(); i++) {
+                try {
+                    studentService.createStudents(List.of(chunk.get(i)));
+                    imported++;
+                } catch (DataAccessException rowExc) {
+                    result.reject(lines.get(i), reason(rowExc));
+                }
+            }
+            result.chunkImported(imported);
+        } catch (DataAccessException exc) {
+            for (Long line : lines) {
+                result.reject(line, reason(exc));
+            }
+        }
+    }
+
+    private static String reason(DataAccessException exc) {
+        return exc instanceof DataIntegrityViolationException
+                ? "A student with this emailAddress already exists"
+                : "Could not be stored: " + exc.getMostSpecificCause().getMessage();
+    }
+
+    private static boolean isCsvHeader(String line) {
+        return line.replace(" ", "").replace("\"", "").equalsIgnoreCase(CSV_HEADER);
+    }
+
+    // firstname,lastname,emailAddress with optional double quotes around a field; "" inside quotes is a literal quote
+    private static CollegeStudent parseCsv(String line) {
+        List<String> fields = new ArrayList<>(3);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quoted field");
+        }
+        fields.add(field.toString().trim());
+        if (fields.size() != 3) {
+            throw new IllegalArgumentException("Expected 3 fields but found " + fields.size());
+        }
+        return new CollegeStudent(fields.get(0), fields.get(1), fields.get(2));
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+}
@@ -0,0 +1,78 @@
+package com.haifachagwey.springrest;
+
+import com.haifachagwey.springrest.models.AverageRanking;
+import com.haifachagwey.springrest.models.StudentRank;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Ranks and top-K from the Fenwick tree must agree with counting every other student by hand
+
+public class AverageRankingTest {
+
+    @Test
+    public void ranksMatchBruteForceThroughUpdates() {
+        Random random = new Random(42);
+        AverageRanking ranking = new AverageRanking();
+        Map<Integer, Double> averages = new HashMap<>();
+        for (int step = 0; step < 20_000; step++) {
+            int studentId = 1 + random.nextInt(2_000);
+            if (random.nextInt(10) == 0) {
+                ranking.remove(studentId);
+                averages.remove(studentId);
+            } else {
+                // Few distinct averages, so there are plenty of ties
+                double average = 60 + random.nextInt(400) / 10.0;
+                ranking.put(studentId, average);
+                averages.put(studentId, average);
+            }
+        }
+
+        assertEquals(averages.size(), ranking.size());
+        for (Map.Entry<Integer, Double> student : averages.entrySet()) {
+            long above = averages.values().stream().filter(average -> average > student.getValue()).count();
+            StudentRank rank = ranking.rankOf(student.getKey());
+            assertEquals(above + 1, rank.getRank(), "Rank of student " + student.getKey());
+            assertEquals(student.getValue(), rank.getAverage());
+            assertEquals(averages.size(), rank.getOutOf());
+        }
+        assertNull(ranking.rankOf(5_000));
+
+        List<StudentRank> top = ranking.top(50);
+        assertEquals(50, top.size());
+        for (int i = 0; i < top.size(); i++) {
+            assertEquals(ranking.rankOf(top.get(i).getStudentId()).getRank(), top.get(i).getRank());
+            if (i > 0) {
+                assertTrue(top.get(i).getAverage() < top.get(i - 1).getAverage()
+                        || (top.get(i).getAverage() == top.get(i - 1).getAverage() && top.get(i).getStudentId() > top.get(i - 1).getStudentId()));
+            }
+        }
+    }
+
+    @Test
+    public void tiesShareARank() {
+        AverageRanking ranking = new AverageRanking();
+        ranking.put(1, 90.00);
+        ranking.put(2, 85.50);
+        ranking.put(3, 85.50);
+        ranking.put(4, 70.25);
+
+        List<StudentRank> top = ranking.top(10);
+        assertEquals(4, top.size());
+        assertEquals(1, top.get(0).getRank());
+        assertEquals(2, top.get(1).getRank());
+        assertEquals(2, top.get(2).getRank());
+        assertEquals(3, top.get(2).getStudentId());
+        assertEquals(4, top.get(3).getRank());
+
+        ranking.put(4, 95.00);
+        assertEquals(1, ranking.rankOf(4).getRank());
+        assertEquals(2, ranking.rankOf(1).getRank());
+        assertEquals(1, ranking.top(1).size());
+    }
+}
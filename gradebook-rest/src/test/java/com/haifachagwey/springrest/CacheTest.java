@@ -0,0 +1,194 @@
+package com.haifachagwey.springrest;
+
+import com.haifachagwey.springrest.models.Gradebook;
+import com.haifachagwey.springrest.models.GradebookCollegeStudent;
+import com.haifachagwey.springrest.service.GradebookCache;
+import com.haifachagwey.springrest.service.StudentAndGradeService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.interceptor.SimpleKey;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// The read cache: what gets cached, that each write evicts exactly the entries it makes stale, after commit, and
+// that a load overlapping a write does not put its stale result back
+
+@TestPropertySource(value = "/application-test.properties", properties = "spring.cache.type=caffeine")
+@SpringBootTest
+public class CacheTest {
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private StudentAndGradeService studentAndGradeService;
+
+    @Autowired
+    private GradebookCache gradebookCache;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${sql.script.create.student}")
+    private String sqlAddStudent;
+
+    @Value("${sql.script.create.math.grade}")
+    private String sqlAddMathGrade;
+
+    @Value("${sql.script.delete.student}")
+    private String sqlDeleteStudent;
+
+    @Value("${sql.script.delete.math.grade}")
+    private String sqlDeleteMathGrade;
+
+    @Value("${sql.script.delete.science.grade}")
+    private String sqlDeleteScienceGrade;
+
+    @Value("${sql.script.delete.history.grade}")
+    private String sqlDeleteHistoryGrade;
+
+    @Value("${sql.script.delete.grade.aggregate}")
+    private String sqlDeleteGradeAggregate;
+
+    private Cache studentInformation;
+
+    private Cache gradebook;
+
+    @BeforeEach
+    public void setupDatabase() {
+        jdbc.execute(sqlAddStudent);
+        jdbc.execute(sqlAddMathGrade);
+        jdbc.execute("insert into student(id,firstname,lastname,email_address) values (2,'Chad','Darby','chad.darby@luv2code.com')");
+        studentInformation = cacheManager.getCache(GradebookCache.STUDENT_INFORMATION);
+        gradebook = cacheManager.getCache(GradebookCache.GRADEBOOK);
+        studentInformation.clear();
+        gradebook.clear();
+    }
+
+    @Test
+    public void studentInformationIsServedFromTheCache() {
+        double hits = cacheGets("hit");
+
+        GradebookCollegeStudent first = studentInformation(1);
+        // Writes that bypass the service are invisible until the entry expires
+        jdbc.execute("update student set firstname = 'Changed' where id = 1");
+        GradebookCollegeStudent second = studentInformation(1);
+
+        assertSame(first, second);
+        assertEquals("Eric", second.getFirstname());
+        assertEquals(hits + 1, cacheGets("hit"));
+    }
+
+    @Test
+    public void missingStudentIsNotCached() {
+        assertNull(studentInformation(0));
+        assertNull(studentInformation.get(0));
+    }
+
+    @Test
+    public void createGradeEvictsOnlyThatStudent() {
+        studentInformation(1);
+        studentInformation(2);
+        gradebook();
+
+        assertTrue(studentAndGradeService.createGrade(90.00, 1, "science"));
+
+        assertNull(studentInformation.get(1));
+        assertNotNull(studentInformation.get(2));
+        assertNull(gradebook.get(SimpleKey.EMPTY));
+        assertEquals(1, studentInformation(1).getStudentGrades().getScienceGradeResults().size());
+    }
+
+    @Test
+    public void deleteGradeAndDeleteStudentEvict() {
+        studentInformation(1);
+        assertEquals(1, studentAndGradeService.deleteGrade(1, "math"));
+        assertNull(studentInformation.get(1));
+
+        studentInformation(2);
+        studentAndGradeService.deleteStudent(2);
+        assertNull(studentInformation.get(2));
+        assertNull(studentInformation(2));
+    }
+
+    @Test
+    public void createStudentEvictsTheGradebook() {
+        assertEquals(2, gradebook().getStudents().size());
+        studentAndGradeService.createStudent("Jane", "Doe", "jane.doe@luv2code.com");
+        assertEquals(3, gradebook().getStudents().size());
+    }
+
+    @Test
+    public void evictionWaitsForCommit() {
+        studentInformation(1);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            studentAndGradeService.createGrade(90.00, 1, "history");
+            assertNotNull(studentInformation.get(1), "Still cached while the insert is uncommitted");
+        });
+
+        assertNull(studentInformation.get(1));
+    }
+
+    @Test
+    public void loadsThatOverlapAWriteAreNotCached() {
+        GradebookCollegeStudent stale = gradebookCache.studentInformation(1, () -> {
+            GradebookCollegeStudent before = studentAndGradeService.studentInformation(1);
+            // Commits, and evicts, while the load is still on its way back
+            assertTrue(studentAndGradeService.createGrade(90.00, 1, "science"));
+            return before;
+        }).value();
+        assertTrue(stale.getStudentGrades().getScienceGradeResults().isEmpty());
+        assertNull(studentInformation.get(1));
+        assertEquals(1, studentInformation(1).getStudentGrades().getScienceGradeResults().size());
+
+        Gradebook staleGradebook = gradebookCache.gradebook(() -> {
+            Gradebook before = studentAndGradeService.getGradebook();
+            studentAndGradeService.createStudent("Jane", "Doe", "jane.doe@luv2code.com");
+            return before;
+        }).value();
+        assertEquals(2, staleGradebook.getStudents().size());
+        assertNull(gradebook.get(SimpleKey.EMPTY));
+        assertEquals(3, gradebook().getStudents().size());
+    }
+
+    private GradebookCollegeStudent studentInformation(int id) {
+        GradebookCache.Versioned<GradebookCollegeStudent> student = gradebookCache.studentInformation(id,
+                () -> studentAndGradeService.studentInformation(id));
+        return student == null ? null : student.value();
+    }
+
+    private Gradebook gradebook() {
+        return gradebookCache.gradebook(studentAndGradeService::getGradebook).value();
+    }
+
+    private double cacheGets(String result) {
+        return meterRegistry.get("cache.gets").tag("cache", GradebookCache.STUDENT_INFORMATION).tag("result", result)
+                .functionCounter().count();
+    }
+
+    @AfterEach
+    public void setupAfterTransaction() {
+        jdbc.execute(sqlDeleteStudent);
+        jdbc.execute(sqlDeleteMathGrade);
+        jdbc.execute(sqlDeleteScienceGrade);
+        jdbc.execute(sqlDeleteHistoryGrade);
+        jdbc.execute(sqlDeleteGradeAggregate);
+    }
+}
@@ -0,0 +1,201 @@
+package com.haifachagwey.springrest;
+
+import com.haifachagwey.springrest.models.GradebookCollegeStudent;
+import com.haifachagwey.springrest.service.GradebookCache;
+import com.haifachagwey.springrest.service.GradebookVersions;
+import com.haifachagwey.springrest.service.StudentAndGradeService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// ETags on GET / and GET /studentInformation/{id}: an unchanged resource revalidates with a 304 and no query,
+// a committed write to it, and only to it, makes the old tag stop matching, and a 404 carries no tag
+
+@TestPropertySource("/application-test.properties")
+@SpringBootTest
+@AutoConfigureMockMvc
+public class ConditionalRequestTest {
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private StudentAndGradeService studentAndGradeService;
+
+    @Autowired
+    private GradebookCache gradebookCache;
+
+    @Autowired
+    private GradebookVersions gradebookVersions;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Value("${sql.script.create.student}")
+    private String sqlAddStudent;
+
+    @Value("${sql.script.create.math.grade}")
+    private String sqlAddMathGrade;
+
+    @Value("${sql.script.delete.student}")
+    private String sqlDeleteStudent;
+
+    @Value("${sql.script.delete.math.grade}")
+    private String sqlDeleteMathGrade;
+
+    @Value("${sql.script.delete.science.grade}")
+    private String sqlDeleteScienceGrade;
+
+    @Value("${sql.script.delete.history.grade}")
+    private String sqlDeleteHistoryGrade;
+
+    @Value("${sql.script.delete.grade.aggregate}")
+    private String sqlDeleteGradeAggregate;
+
+    @Value("${sql.script.delete.gradebook.change}")
+    private String sqlDeleteGradebookChange;
+
+    @BeforeEach
+    public void setupDatabase() {
+        jdbc.execute(sqlAddStudent);
+        jdbc.execute(sqlAddMathGrade);
+        jdbc.execute("insert into student(id,firstname,lastname,email_address) values (2,'Chad','Darby','chad.darby@luv2code.com')");
+    }
+
+    @Test
+    public void unchangedStudentIsNotModified() throws Exception {
+        String eTag = studentETag(1);
+        assertTrue(eTag.startsWith("\"") && eTag.endsWith("\""), "Strong ETag");
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        mockMvc.perform(MockMvcRequestBuilders.get("/studentInformation/{id}", 1).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, eTag))
+                .andExpect(content().string(""));
+        assertEquals(0, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void writesChangeOnlyTheirStudentsETag() throws Exception {
+        String eTag = studentETag(1);
+        String otherETag = studentETag(2);
+        String gradebookETag = gradebookETag();
+
+        assertTrue(studentAndGradeService.createGrade(90.00, 1, "science"));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/studentInformation/{id}", 1).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.studentGrades.scienceGradeResults", hasSize(1)));
+        assertNotEquals(eTag, studentETag(1));
+        assertEquals(otherETag, studentETag(2));
+        assertNotEquals(gradebookETag, gradebookETag());
+    }
+
+    @Test
+    public void rolledBackWritesKeepTheETag() throws Exception {
+        String eTag = studentETag(1);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            studentAndGradeService.createGrade(90.00, 1, "history");
+            status.setRollbackOnly();
+        });
+
+        assertEquals(eTag, studentETag(1));
+    }
+
+    @Test
+    public void deletedStudentIsNotFound() throws Exception {
+        String eTag = studentETag(2);
+
+        studentAndGradeService.deleteStudent(2);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/studentInformation/{id}", 2).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotFound())
+                .andExpect(header().doesNotExist(HttpHeaders.ETAG));
+        mockMvc.perform(MockMvcRequestBuilders.get("/studentInformation/{id}", 0))
+                .andExpect(status().isNotFound())
+                .andExpect(header().doesNotExist(HttpHeaders.ETAG));
+    }
+
+    @Test
+    public void loadsThatOverlapAWriteKeepTheirOwnTag() throws Exception {
+        GradebookCache.Versioned<GradebookCollegeStudent> stale = gradebookCache.studentInformation(1, () -> {
+            GradebookCollegeStudent before = studentAndGradeService.studentInformation(1);
+            assertTrue(studentAndGradeService.createGrade(90.00, 1, "science"));
+            return before;
+        });
+
+        String staleETag = gradebookVersions.studentETag(1, stale.version());
+        assertNotEquals(staleETag, gradebookVersions.getStudentETag(1));
+        mockMvc.perform(MockMvcRequestBuilders.get("/studentInformation/{id}", 1).header(HttpHeaders.IF_NONE_MATCH, staleETag))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, gradebookVersions.getStudentETag(1)))
+                .andExpect(jsonPath("$.studentGrades.scienceGradeResults", hasSize(1)));
+    }
+
+    @Test
+    public void gradebookIsNotModifiedUntilAWrite() throws Exception {
+        String eTag = gradebookETag();
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+        mockMvc.perform(MockMvcRequestBuilders.get("/").param("after", "0").param("limit", "1").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+
+        studentAndGradeService.createStudent("Jane", "Doe", "jane.doe@luv2code.com");
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(3)));
+    }
+
+    private String studentETag(int id) throws Exception {
+        return mockMvc.perform(MockMvcRequestBuilders.get("/studentInformation/{id}", id))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+    }
+
+    private String gradebookETag() throws Exception {
+        return mockMvc.perform(MockMvcRequestBuilders.get("/"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+    }
+
+    @AfterEach
+    public void setupAfterTransaction() {
+        jdbc.execute(sqlDeleteStudent);
+        jdbc.execute(sqlDeleteMathGrade);
+        jdbc.execute(sqlDeleteScienceGrade);
+        jdbc.execute(sqlDeleteHistoryGrade);
+        jdbc.execute(sqlDeleteGradeAggregate);
+        jdbc.execute(sqlDeleteGradebookChange);
+    }
+}
@@ -2,10 +2,16 @@ package com.haifachagwey.springrest;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.haifachagwey.springrest.models.CollegeStudent;
-import com.haifachagwey.springrest.models.MathGrade;
-import com.haifachagwey.springrest.repository.MathGradesDao;
+import com.haifachagwey.springrest.models.Subject;
+import com.haifachagwey.springrest.models.SubjectGrade;
+import com.haifachagwey.springrest.repository.GradeDao;
 import com.haifachagwey.springrest.repository.StudentDao;
+import com.haifachagwey.springrest.service.GradeAggregateService;
+import com.haifachagwey.springrest.service.GradeRankingService;
+import com.haifachagwey.springrest.service.GradeStatisticsService;
 import com.haifachagwey.springrest.service.StudentAndGradeService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
@@ -19,13 +25,16 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.transaction.Transactional;
 import java.util.Optional;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.hasSize;
 import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 import static org.hamcrest.Matchers.is;
@@ -48,6 +57,15 @@ public class GradeBookControllerTest {
     @Autowired
     private StudentAndGradeService studentAndGradeService;
 
+    @Autowired
+    private GradeStatisticsService gradeStatisticsService;
+
+    @Autowired
+    private GradeAggregateService gradeAggregateService;
+
+    @Autowired
+    private GradeRankingService gradeRankingService;
+
     @Autowired
     private JdbcTemplate jdbc;
 
@@ -61,7 +79,7 @@ public class GradeBookControllerTest {
     private StudentDao studentDao;
 
     @Autowired
-    private MathGradesDao mathGradeDao;
+    private GradeDao gradeDao;
 
     @Value("${sql.script.create.student}")
     private String sqlAddStudent;
@@ -124,6 +142,47 @@ public class GradeBookControllerTest {
                 .andExpect(jsonPath("$",hasSize(2)));
     }
 
+    @Test
+    public void getGradebookPageHttpRequest() throws Exception {
+        CollegeStudent student = new CollegeStudent();
+        student.setFirstname(request.getParameter("firstname"));
+        student.setLastname(request.getParameter("lastname"));
+        student.setEmailAddress(request.getParameter("emailAddress"));
+        entityManager.persist(student);
+        entityManager.flush();
+        mockMvc.perform(MockMvcRequestBuilders.get("/").param("after", "0").param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Link", containsString("after=1&limit=1")))
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id", is(1)))
+                .andExpect(jsonPath("$[0].studentGrades.mathGradeResults", hasSize(1)));
+        mockMvc.perform(MockMvcRequestBuilders.get("/").param("after", "1").param("limit", "10"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Link"))
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].emailAddress", is("chad.darby@luv2code.com")));
+    }
+
+    // The export streams from another thread with its own transaction, so the test data has to be committed
+    @Test
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    public void exportGradebookHttpRequest() throws Exception {
+        studentAndGradeService.createStudent("Chad", "Darby", "chad.darby@luv2code.com");
+        MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders.get("/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        assertEquals(1800000, mvcResult.getRequest().getAsyncContext().getTimeout(), "The export sets its own timeout");
+        String body = mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString();
+        String[] lines = body.split("\n");
+        assertEquals(2, lines.length);
+        assertEquals("Eric", objectMapper.readTree(lines[0]).get("firstname").asText());
+        assertEquals(1, objectMapper.readTree(lines[0]).at("/studentGrades/mathGradeResults").size());
+        assertEquals("Chad", objectMapper.readTree(lines[1]).get("firstname").asText());
+    }
+
     @Test
     public void getStudentHttpRequest() throws Exception {
         Optional<CollegeStudent> student = studentDao.findById(1);
@@ -137,6 +196,26 @@ public class GradeBookControllerTest {
                 .andExpect(jsonPath("$.emailAddress", is("eric.roby@gmail.com")));
     }
 
+    // The detail endpoint must stay a single round trip, whether or not the student exists
+    @Test
+    public void getStudentHttpRequestIsOneQuery() throws Exception {
+        Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+
+        statistics.clear();
+        mockMvc.perform(MockMvcRequestBuilders.get("/studentInformation/{id}", 1))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.studentGrades.mathGradeResults", hasSize(1)))
+                .andExpect(jsonPath("$.studentGrades.scienceGradeResults", hasSize(1)))
+                .andExpect(jsonPath("$.studentGrades.historyGradeResults", hasSize(1)))
+                .andExpect(jsonPath("$.studentGrades.mathGradeResults[0].grade", is(100.0)));
+        assertEquals(1, statistics.getPrepareStatementCount());
+
+        statistics.clear();
+        mockMvc.perform(MockMvcRequestBuilders.get("/studentInformation/{id}", 0))
+                .andExpect(status().isNotFound());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
     @Test
     public void getNonExistentStudentHttpRequest() throws Exception {
         Optional<CollegeStudent> student = studentDao.findById(0);
@@ -165,6 +244,95 @@ public class GradeBookControllerTest {
         assertNotNull(verifyStudent, "Student should be valid");
     }
 
+    @Test
+    public void createStudentWithTakenEmailHttpRequest() throws Exception {
+        CollegeStudent student = new CollegeStudent("Eric", "Again", "eric.roby@gmail.com");
+        mockMvc.perform(post("/")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(student)))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.status", is(409)))
+                .andExpect(jsonPath("$.message", is("A student with email address eric.roby@gmail.com already exists")));
+    }
+
+    @Test
+    public void createStudentReturnMinimalHttpRequest() throws Exception {
+        CollegeStudent student = new CollegeStudent();
+        student.setFirstname(request.getParameter("firstname"));
+        student.setLastname(request.getParameter("lastname"));
+        student.setEmailAddress(request.getParameter("emailAddress"));
+        mockMvc.perform(post("/")
+                .header("Prefer", "return=minimal")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(student)))
+                .andExpect(status().isCreated())
+                .andExpect(header().string("Preference-Applied", "return=minimal"))
+                .andExpect(header().string("Location", containsString("/studentInformation/")))
+                .andExpect(content().string(""));
+        CollegeStudent verifyStudent = studentDao.findByEmailAddress("chad.darby@luv2code.com");
+        assertNotNull(verifyStudent, "Student should be valid");
+    }
+
+    @Test
+    public void importStudentsCsvHttpRequest() throws Exception {
+        mockMvc.perform(post("/students/import")
+                .param("chunkSize", "2")
+                .contentType("text/csv")
+                .content("firstname,lastname,emailAddress\n"
+                        + "Chad,Darby,chad.darby@luv2code.com\n"
+                        + "\"Anne, Marie\",Smith,anne.smith@luv2code.com\n"
+                        + "Missing,Email\n"
+                        + "Jane,Doe,jane.doe@luv2code.com\n"
+                        + ",NoFirstname,nobody@luv2code.com\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported", is(3)))
+                .andExpect(jsonPath("$.chunks", is(2)))
+                .andExpect(jsonPath("$.failed", is(2)))
+                .andExpect(jsonPath("$.errors[0].line", is(4)))
+                .andExpect(jsonPath("$.errors[0].reason", is("Expected 3 fields but found 2")))
+                .andExpect(jsonPath("$.errors[1].line", is(6)));
+        assertNotNull(studentDao.findByEmailAddress("chad.darby@luv2code.com"));
+        assertEquals("Anne, Marie", studentDao.findByEmailAddress("anne.smith@luv2code.com").getFirstname());
+        assertNotNull(studentDao.findByEmailAddress("jane.doe@luv2code.com"));
+    }
+
+    // Each chunk commits or rolls back on its own, which only shows outside the test transaction
+    @Test
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    public void importStudentsReportsDuplicateEmailsPerRow() throws Exception {
+        mockMvc.perform(post("/students/import")
+                .param("chunkSize", "3")
+                .contentType("text/csv")
+                .content("Chad,Darby,chad.darby@luv2code.com\n"
+                        + "Eric,Again,eric.roby@gmail.com\n"
+                        + "Jane,Doe,jane.doe@luv2code.com\n"
+                        + "Chad,Twice,chad.darby@luv2code.com\n"
+                        + "John,Doe,john.doe@luv2code.com\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported", is(3)))
+                .andExpect(jsonPath("$.failed", is(2)))
+                .andExpect(jsonPath("$.errors[0].line", is(2)))
+                .andExpect(jsonPath("$.errors[0].reason", is("A student with this emailAddress already exists")))
+                .andExpect(jsonPath("$.errors[1].line", is(4)));
+        assertEquals("Darby", studentDao.findByEmailAddress("chad.darby@luv2code.com").getLastname());
+        assertNotNull(studentDao.findByEmailAddress("jane.doe@luv2code.com"));
+        assertNotNull(studentDao.findByEmailAddress("john.doe@luv2code.com"));
+    }
+
+    @Test
+    public void importStudentsNdjsonHttpRequest() throws Exception {
+        mockMvc.perform(post("/students/import")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .content("{\"firstname\":\"Chad\",\"lastname\":\"Darby\",\"emailAddress\":\"chad.darby@luv2code.com\"}\n"
+                        + "{\"firstname\":\"Jane\"\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported", is(1)))
+                .andExpect(jsonPath("$.failed", is(1)))
+                .andExpect(jsonPath("$.errors[0].line", is(2)))
+                .andExpect(jsonPath("$.errors[0].reason", is("Malformed JSON")));
+        assertNotNull(studentDao.findByEmailAddress("chad.darby@luv2code.com"));
+    }
+
     @Test
     public void deleteStudentHttpRequest() throws Exception {
         assertTrue(studentDao.findById(1).isPresent());
@@ -175,6 +343,17 @@ public class GradeBookControllerTest {
         assertFalse(studentDao.findById(1).isPresent());
     }
 
+    @Test
+    public void deleteStudentReturnMinimalHttpRequest() throws Exception {
+        assertTrue(studentDao.findById(1).isPresent());
+        mockMvc.perform(MockMvcRequestBuilders.delete("/student/{id}", 1)
+                .header("Prefer", "handling=lenient, return=minimal"))
+                .andExpect(status().isNoContent())
+                .andExpect(header().string("Preference-Applied", "return=minimal"))
+                .andExpect(content().string(""));
+        assertFalse(studentDao.findById(1).isPresent());
+    }
+
     @Test
     public void deleteNonExistentStudentHttpRequest() throws Exception {
         assertFalse(studentDao.findById(0).isPresent());
@@ -202,6 +381,130 @@ public class GradeBookControllerTest {
                 .andExpect(jsonPath("$.studentGrades.mathGradeResults", hasSize(2)));
     }
 
+    @Test
+    public void createGradesHttpRequest() throws Exception {
+        this.mockMvc.perform(post("/grades/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"grade\":85.00,\"gradeType\":\"math\",\"studentId\":1},"
+                        + "{\"grade\":90.00,\"gradeType\":\"history\",\"studentId\":1},"
+                        + "{\"grade\":70.00,\"gradeType\":\"science\",\"studentId\":0}]"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(APPLICATION_JSON_UTF8))
+                .andExpect(jsonPath("$.accepted", is(2)))
+                .andExpect(jsonPath("$.rejected", hasSize(1)))
+                .andExpect(jsonPath("$.rejected[0].row", is(2)))
+                .andExpect(jsonPath("$.rejected[0].reason", is("Student was not found")));
+    }
+
+    @Test
+    public void createGradesWithMissingFieldsHttpRequest() throws Exception {
+        this.mockMvc.perform(post("/grades/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"gradeType\":\"math\",\"studentId\":1},"
+                        + "{\"grade\":90.00,\"gradeType\":\"history\"},"
+                        + "{\"grade\":70.00,\"gradeType\":\"science\",\"studentId\":1}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accepted", is(1)))
+                .andExpect(jsonPath("$.rejected", hasSize(2)))
+                .andExpect(jsonPath("$.rejected[0].row", is(0)))
+                .andExpect(jsonPath("$.rejected[0].reason", is("grade and studentId are required")))
+                .andExpect(jsonPath("$.rejected[1].row", is(1)));
+    }
+
+    @Test
+    public void getStudentAveragesHttpRequest() throws Exception {
+        this.mockMvc.perform(post("/aggregates/rebuild"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.mismatched", is(3)))
+                .andExpect(jsonPath("$.rebuilt", is(true)));
+        this.mockMvc.perform(post("/grades")
+                .param("grade", "85.00")
+                .param("gradeType", "math")
+                .param("studentId", "1"))
+                .andExpect(status().isOk());
+        mockMvc.perform(MockMvcRequestBuilders.get("/studentInformation/{id}/averages", 1))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(3)))
+                .andExpect(jsonPath("$[0].gradeType", is("math")))
+                .andExpect(jsonPath("$[0].gradeCount", is(2)))
+                .andExpect(jsonPath("$[0].minGrade", is(85.0)))
+                .andExpect(jsonPath("$[0].average", is(92.5)));
+        mockMvc.perform(MockMvcRequestBuilders.get("/aggregates/verify"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.checked", is(3)))
+                .andExpect(jsonPath("$.mismatched", is(0)));
+        mockMvc.perform(MockMvcRequestBuilders.get("/studentInformation/{id}/averages", 0))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void getAnalyticsHttpRequest() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/analytics"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(APPLICATION_JSON_UTF8))
+                .andExpect(jsonPath("$", hasSize(3)))
+                .andExpect(jsonPath("$[0].gradeType", is("math")))
+                .andExpect(jsonPath("$[0].gradeCount", is(1)))
+                .andExpect(jsonPath("$[0].average", is(100.0)))
+                .andExpect(jsonPath("$[0].studentId").doesNotExist());
+        mockMvc.perform(MockMvcRequestBuilders.get("/analytics/{gradeType}", "science").param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Link", containsString("/analytics/science?after=1&limit=1")))
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].studentId", is(1)))
+                .andExpect(jsonPath("$[0].gradeCount", is(1)))
+                .andExpect(jsonPath("$[0].maxGrade", is(100.0)));
+        mockMvc.perform(MockMvcRequestBuilders.get("/analytics/{gradeType}", "science").param("after", "1"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Link"))
+                .andExpect(jsonPath("$", hasSize(0)));
+        mockMvc.perform(MockMvcRequestBuilders.get("/analytics/{gradeType}", "literature"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void getGradeDistributionHttpRequest() throws Exception {
+        jdbc.execute("insert into grade(subject,student_id,grade) values (2,1,55.00),(2,1,75.25)");
+        gradeStatisticsService.rebuild();
+        mockMvc.perform(MockMvcRequestBuilders.get("/statistics/{gradeType}", "history").param("buckets", "4"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(APPLICATION_JSON_UTF8))
+                .andExpect(jsonPath("$.gradeType", is("history")))
+                .andExpect(jsonPath("$.count", is(3)))
+                .andExpect(jsonPath("$.median", is(75.25)))
+                .andExpect(jsonPath("$.p10", is(55.0)))
+                .andExpect(jsonPath("$.histogram", hasSize(4)))
+                .andExpect(jsonPath("$.histogram[2].from", is(50.0)))
+                .andExpect(jsonPath("$.histogram[2].count", is(1)))
+                .andExpect(jsonPath("$.histogram[3].count", is(2)));
+        mockMvc.perform(MockMvcRequestBuilders.get("/statistics/{gradeType}", "literature"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void getRankingsHttpRequest() throws Exception {
+        jdbc.execute("insert into student(id,firstname,lastname,email_address) values (2,'Chad','Darby','chad.darby@gmail.com')");
+        jdbc.execute("insert into grade(subject,student_id,grade) values (0,2,95.00),(0,2,85.50)");
+        gradeAggregateService.rebuild();
+        gradeRankingService.rebuild();
+        mockMvc.perform(MockMvcRequestBuilders.get("/rankings/{gradeType}", "math").param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(APPLICATION_JSON_UTF8))
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].studentId", is(1)))
+                .andExpect(jsonPath("$[0].rank", is(1)))
+                .andExpect(jsonPath("$[0].outOf", is(2)));
+        mockMvc.perform(MockMvcRequestBuilders.get("/rankings/{gradeType}/{studentId}", "math", 2))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.gradeType", is("math")))
+                .andExpect(jsonPath("$.rank", is(2)))
+                .andExpect(jsonPath("$.average", is(90.25)));
+        mockMvc.perform(MockMvcRequestBuilders.get("/rankings/{gradeType}/{studentId}", "science", 2))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(MockMvcRequestBuilders.get("/rankings/{gradeType}", "literature"))
+                .andExpect(status().isNotFound());
+    }
+
     // Create a grade for a student id that does not exist
     @Test
     public void createGradeForNonExistentStudentHttpRequest() throws Exception {
@@ -230,7 +533,7 @@ public class GradeBookControllerTest {
 
     @Test
     public void deleteGradeHttpRequest() throws Exception {
-        Optional<MathGrade> mathGrade = mathGradeDao.findById(1);
+        Optional<SubjectGrade> mathGrade = gradeDao.findById(new SubjectGrade.Key(Subject.MATH, 1));
         assertTrue(mathGrade.isPresent());
         mockMvc.perform(MockMvcRequestBuilders.delete("/grades/{id}/{gradeType}", 1, "math"))
                 .andExpect(status().isOk())
@@ -0,0 +1,85 @@
+package com.haifachagwey.springrest;
+
+import com.haifachagwey.springrest.models.GradeDistribution;
+import com.haifachagwey.springrest.models.GradeHistogram;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// The histogram's quantiles must be exactly the nearest-rank quantiles of the sorted grades
+
+public class GradeHistogramTest {
+
+    private static double nearestRank(double[] sorted, double q) {
+        int rank = Math.max(1, (int) Math.ceil(q * sorted.length));
+        return sorted[rank - 1];
+    }
+
+    @Test
+    public void quantilesMatchSortedGrades() {
+        Random random = new Random(42);
+        for (int size : new int[] {1, 2, 3, 10, 999, 100_000}) {
+            GradeHistogram histogram = new GradeHistogram();
+            double[] grades = new double[size];
+            for (int i = 0; i < size; i++) {
+                grades[i] = random.nextInt(10_001) / 100.0;
+                histogram.add(grades[i]);
+            }
+            Arrays.sort(grades);
+
+            GradeDistribution distribution = histogram.describe("math", 10);
+            assertEquals(size, distribution.getCount());
+            assertEquals(grades[0], distribution.getMinGrade());
+            assertEquals(grades[size - 1], distribution.getMaxGrade());
+            assertEquals(nearestRank(grades, 0.10), distribution.getP10(), "p10 of " + size);
+            assertEquals(nearestRank(grades, 0.50), distribution.getMedian(), "median of " + size);
+            assertEquals(nearestRank(grades, 0.90), distribution.getP90(), "p90 of " + size);
+            assertEquals(Arrays.stream(grades).average().getAsDouble(), distribution.getMean(), 0.005);
+        }
+    }
+
+    @Test
+    public void histogramBucketsCoverZeroToHundred() {
+        GradeHistogram histogram = new GradeHistogram();
+        for (double grade : new double[] {0.00, 9.99, 10.00, 55.50, 99.99, 100.00}) {
+            histogram.add(grade);
+        }
+
+        GradeDistribution distribution = histogram.describe("science", 10);
+        assertEquals(10, distribution.getHistogram().size());
+        assertEquals(0.00, distribution.getHistogram().get(0).getFrom());
+        assertEquals(10.00, distribution.getHistogram().get(0).getTo());
+        assertEquals(2, distribution.getHistogram().get(0).getCount());
+        assertEquals(1, distribution.getHistogram().get(1).getCount());
+        assertEquals(1, distribution.getHistogram().get(5).getCount());
+        assertEquals(2, distribution.getHistogram().get(9).getCount(), "100 goes in the last bucket");
+
+        assertEquals(6, histogram.describe("science", 1).getHistogram().get(0).getCount());
+    }
+
+    @Test
+    public void removeAndMergeAreExact() {
+        GradeHistogram histogram = new GradeHistogram();
+        histogram.add(80.50);
+        histogram.add(80.50);
+        histogram.add(70.00);
+        histogram.remove(80.50);
+
+        GradeHistogram other = new GradeHistogram();
+        other.add(90.00);
+        histogram.merge(other);
+
+        GradeDistribution distribution = histogram.describe("history", 10);
+        assertEquals(3, distribution.getCount());
+        assertEquals(80.50, distribution.getMedian());
+        assertEquals(80.17, distribution.getMean());
+
+        GradeDistribution empty = new GradeHistogram().describe("history", 10);
+        assertEquals(0, empty.getCount());
+        assertNull(empty.getMedian());
+        assertEquals(10, empty.getHistogram().size());
+    }
+}
@@ -0,0 +1,69 @@
+package com.haifachagwey.springrest;
+
+import com.haifachagwey.springrest.models.GradeStatistics;
+import com.haifachagwey.springrest.models.Grade;
+import com.haifachagwey.springrest.models.Subject;
+import com.haifachagwey.springrest.models.SubjectGrade;
+import com.haifachagwey.springrest.models.StudentGrades;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// The arithmetic rounding must agree bit for bit with the BigDecimal HALF_UP rounding it replaced
+
+public class GradeStatisticsTest {
+
+    private static double bigDecimalHalfUp(double value) {
+        return BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP).doubleValue();
+    }
+
+    private static void assertSameRounding(double value) {
+        assertEquals(Double.doubleToLongBits(bigDecimalHalfUp(value)), Double.doubleToLongBits(GradeStatistics.roundToHundredths(value)),
+                () -> "Rounding differs for " + value);
+    }
+
+    @Test
+    public void roundToHundredthsMatchesBigDecimalOnTies() {
+        // Every thousandth up to 100, plus the neighbouring doubles on each side of it
+        for (int thousandths = 0; thousandths <= 100_000; thousandths++) {
+            double value = thousandths / 1000.0;
+            assertSameRounding(value);
+            assertSameRounding(Math.nextUp(value));
+            assertSameRounding(Math.nextDown(value));
+            assertSameRounding(-value);
+        }
+    }
+
+    @Test
+    public void roundToHundredthsMatchesBigDecimalOnGradeAverages() {
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            int numberOfGrades = 1 + random.nextInt(40);
+            double sum = 0;
+            for (int j = 0; j < numberOfGrades; j++) {
+                sum += random.nextInt(10_001) / 100.0;
+            }
+            assertSameRounding(sum / numberOfGrades);
+        }
+        assertSameRounding(2e9 + 0.125);
+        assertThrows(NumberFormatException.class, () -> GradeStatistics.roundToHundredths(0.0 / 0));
+    }
+
+    @Test
+    public void findGradePointAverageAgreesForListsAndArrays() {
+        List<Grade> grades = new ArrayList<>();
+        double[] values = {100.00, 95.00, 83.25, 79.67, 81.80};
+        for (double value : values) {
+            grades.add(new SubjectGrade(Subject.MATH, value));
+        }
+        StudentGrades studentGrades = new StudentGrades(grades, List.of(), List.of());
+        assertEquals(87.94, studentGrades.findGradePointAverage(grades));
+        assertEquals(87.94, studentGrades.findGradePointAverage(values));
+    }
+}
@@ -0,0 +1,208 @@
+package com.haifachagwey.springrest;
+
+import com.haifachagwey.springrest.models.CollegeStudent;
+import com.haifachagwey.springrest.models.GradeSubmission;
+import com.haifachagwey.springrest.models.GradebookChange;
+import com.haifachagwey.springrest.models.GradebookChanges;
+import com.haifachagwey.springrest.service.GradebookChangeLog;
+import com.haifachagwey.springrest.service.StudentAndGradeService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// The change feed behind GET /changes: one entry per committed write, numbered without gaps, nothing for a
+// rolled back one, and a 410 once compaction has dropped what a client still needed
+
+@TestPropertySource(value = "/application-test.properties", properties = "gradebook.changes.retention-ms=0")
+@SpringBootTest
+@AutoConfigureMockMvc
+public class GradebookChangeLogTest {
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private StudentAndGradeService studentAndGradeService;
+
+    @Autowired
+    private GradebookChangeLog gradebookChangeLog;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Value("${sql.script.create.student}")
+    private String sqlAddStudent;
+
+    @Value("${sql.script.create.math.grade}")
+    private String sqlAddMathGrade;
+
+    @Value("${sql.script.delete.student}")
+    private String sqlDeleteStudent;
+
+    @Value("${sql.script.delete.math.grade}")
+    private String sqlDeleteMathGrade;
+
+    @Value("${sql.script.delete.science.grade}")
+    private String sqlDeleteScienceGrade;
+
+    @Value("${sql.script.delete.history.grade}")
+    private String sqlDeleteHistoryGrade;
+
+    @Value("${sql.script.delete.grade.aggregate}")
+    private String sqlDeleteGradeAggregate;
+
+    @Value("${sql.script.delete.gradebook.change}")
+    private String sqlDeleteGradebookChange;
+
+    private long version;
+
+    @BeforeEach
+    public void setupDatabase() {
+        jdbc.execute(sqlAddStudent);
+        jdbc.execute(sqlAddMathGrade);
+        version = gradebookChangeLog.changesSince(null, 1).getVersion();
+    }
+
+    @Test
+    public void writesAreLoggedInCommitOrder() {
+        int id = studentAndGradeService.createStudent("Chad", "Darby", "chad.darby@luv2code.com");
+        assertTrue(studentAndGradeService.createGrade(80.00, id, "science"));
+        Integer scienceGradeId = jdbc.queryForObject("select max(id) from grade where subject = 1", Integer.class);
+        assertEquals(1, studentAndGradeService.deleteGrade(1, "math"));
+        studentAndGradeService.deleteStudent(id);
+
+        GradebookChanges changes = gradebookChangeLog.changesSince(version, 100);
+        assertEquals(version + 4, changes.getVersion());
+        List<GradebookChange> entries = changes.getChanges();
+        assertEquals(4, entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals(version + i + 1, entries.get(i).getVersion());
+        }
+
+        assertEquals(GradebookChange.Type.STUDENT_CREATED, entries.get(0).getType());
+        assertEquals(id, entries.get(0).getStudentId());
+        assertEquals("chad.darby@luv2code.com", entries.get(0).getEmailAddress());
+
+        assertEquals(GradebookChange.Type.GRADE_CREATED, entries.get(1).getType());
+        assertEquals("science", entries.get(1).getGradeType());
+        assertEquals(80.00, entries.get(1).getGrade());
+        assertEquals(scienceGradeId, entries.get(1).getGradeId());
+
+        assertEquals(GradebookChange.Type.GRADE_DELETED, entries.get(2).getType());
+        assertEquals(1, entries.get(2).getGradeId());
+        assertEquals(1, entries.get(2).getStudentId());
+
+        assertEquals(GradebookChange.Type.STUDENT_DELETED, entries.get(3).getType());
+        assertEquals(id, entries.get(3).getStudentId());
+    }
+
+    @Test
+    public void bulkWritesAreLogged() {
+        studentAndGradeService.createStudents(List.of(new CollegeStudent("Jane", "Doe", "jane.doe@luv2code.com"),
+                new CollegeStudent("John", "Doe", "john.doe@luv2code.com")));
+        studentAndGradeService.createGrades(List.of(new GradeSubmission(70.00, "math", 1), new GradeSubmission(60.00, "history", 1),
+                new GradeSubmission(101.00, "math", 1)));
+
+        List<GradebookChange> entries = gradebookChangeLog.changesSince(version, 100).getChanges();
+        assertEquals(4, entries.size());
+        assertEquals("Jane", entries.get(0).getFirstname());
+        assertEquals("John", entries.get(1).getFirstname());
+        assertEquals(jdbc.queryForObject("select id from student where email_address = 'jane.doe@luv2code.com'", Integer.class),
+                entries.get(0).getStudentId());
+        assertEquals(jdbc.queryForObject("select id from student where email_address = 'john.doe@luv2code.com'", Integer.class),
+                entries.get(1).getStudentId());
+        assertEquals(2, entries.stream().filter(change -> change.getType() == GradebookChange.Type.GRADE_CREATED).count());
+        int historyGradeId = jdbc.queryForObject("select id from grade where subject = 2 and grade = 60.00", Integer.class);
+        assertTrue(entries.stream().anyMatch(change -> "history".equals(change.getGradeType()) && change.getGrade() == 60.00
+                && change.getGradeId() == historyGradeId));
+    }
+
+    @Test
+    public void rolledBackWritesAreNotLogged() {
+        transactionTemplate.executeWithoutResult(status -> {
+            studentAndGradeService.createGrade(90.00, 1, "history");
+            status.setRollbackOnly();
+        });
+
+        GradebookChanges changes = gradebookChangeLog.changesSince(version, 100);
+        assertEquals(version, changes.getVersion());
+        assertTrue(changes.getChanges().isEmpty());
+
+        assertTrue(studentAndGradeService.createGrade(90.00, 1, "history"));
+        assertEquals(version + 1, gradebookChangeLog.changesSince(version, 100).getVersion());
+    }
+
+    @Test
+    public void changesAreServedAPageAtATime() throws Exception {
+        studentAndGradeService.createGrade(90.00, 1, "history");
+        studentAndGradeService.createGrade(80.00, 1, "history");
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/changes"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.version", is((int) version + 2)))
+                .andExpect(jsonPath("$.changes", hasSize(0)));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/changes").param("since", String.valueOf(version)).param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.version", is((int) version + 1)))
+                .andExpect(jsonPath("$.changes", hasSize(1)))
+                .andExpect(jsonPath("$.changes[0].type", is("GRADE_CREATED")))
+                .andExpect(jsonPath("$.changes[0].gradeType", is("history")))
+                .andExpect(jsonPath("$.changes[0].grade", is(90.0)));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/changes").param("since", String.valueOf(version + 1)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.version", is((int) version + 2)))
+                .andExpect(jsonPath("$.changes", hasSize(1)))
+                .andExpect(jsonPath("$.changes[0].grade", is(80.0)));
+    }
+
+    @Test
+    public void compactedVersionsAreGone() throws Exception {
+        studentAndGradeService.createGrade(90.00, 1, "history");
+        gradebookChangeLog.compact();
+
+        assertNull(gradebookChangeLog.changesSince(version, 100));
+        mockMvc.perform(MockMvcRequestBuilders.get("/changes").param("since", String.valueOf(version)))
+                .andExpect(status().isGone())
+                .andExpect(jsonPath("$.status", is(410)));
+
+        // Caught up clients carry on
+        GradebookChanges changes = gradebookChangeLog.changesSince(version + 1, 100);
+        assertEquals(version + 1, changes.getVersion());
+        assertTrue(changes.getChanges().isEmpty());
+
+        // A version the database never handed out means starting over too
+        assertNull(gradebookChangeLog.changesSince(version + 2, 100));
+    }
+
+    @AfterEach
+    public void setupAfterTransaction() {
+        jdbc.execute(sqlDeleteStudent);
+        jdbc.execute(sqlDeleteMathGrade);
+        jdbc.execute(sqlDeleteScienceGrade);
+        jdbc.execute(sqlDeleteHistoryGrade);
+        jdbc.execute(sqlDeleteGradeAggregate);
+        jdbc.execute(sqlDeleteGradebookChange);
+    }
+}
@@ -0,0 +1,238 @@
+package com.haifachagwey.springrest;
+
+import com.haifachagwey.springrest.service.GradebookEventBroadcaster;
+import com.haifachagwey.springrest.service.StudentAndGradeService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Server-Sent Events: committed writes reach the subscribers that asked for them, rolled back ones never do,
+// and a subscriber that stops reading is dropped once its buffer fills up or a write to it stalls, without
+// holding anyone else back
+
+@TestPropertySource(value = "/application-test.properties", properties = {"gradebook.events.buffer-size=2",
+        "gradebook.events.dispatcher-threads=2", "gradebook.events.send-timeout-ms=200"})
+@SpringBootTest
+@AutoConfigureMockMvc
+public class GradebookEventsTest {
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private StudentAndGradeService studentAndGradeService;
+
+    @Autowired
+    private GradebookEventBroadcaster gradebookEventBroadcaster;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Value("${sql.script.create.student}")
+    private String sqlAddStudent;
+
+    @Value("${sql.script.delete.student}")
+    private String sqlDeleteStudent;
+
+    @Value("${sql.script.delete.math.grade}")
+    private String sqlDeleteMathGrade;
+
+    @Value("${sql.script.delete.science.grade}")
+    private String sqlDeleteScienceGrade;
+
+    @Value("${sql.script.delete.history.grade}")
+    private String sqlDeleteHistoryGrade;
+
+    @Value("${sql.script.delete.grade.aggregate}")
+    private String sqlDeleteGradeAggregate;
+
+    @Value("${sql.script.delete.gradebook.change}")
+    private String sqlDeleteGradebookChange;
+
+    @BeforeEach
+    public void setupDatabase() {
+        jdbc.execute(sqlAddStudent);
+        jdbc.execute("insert into student(id,firstname,lastname,email_address) values (2,'Chad','Darby','chad.darby@luv2code.com')");
+    }
+
+    @Test
+    public void committedWritesReachTheirSubscribers() throws Exception {
+        RecordingEmitter wholeClass = subscribe(null);
+        RecordingEmitter student = subscribe(1);
+        RecordingEmitter otherStudent = subscribe(2);
+
+        assertTrue(studentAndGradeService.createGrade(90.00, 1, "math"));
+
+        await(() -> wholeClass.events.size() == 1 && student.events.size() == 1);
+        assertTrue(student.events.get(0).contains("event:GRADE_CREATED\n"));
+        assertTrue(student.events.get(0).contains("\"grade\":90.0"));
+        assertTrue(student.events.get(0).startsWith("id:"));
+        assertEquals(wholeClass.events, student.events);
+
+        int id = studentAndGradeService.createStudent("Jane", "Doe", "jane.doe@luv2code.com");
+        await(() -> wholeClass.events.size() == 2);
+        assertTrue(wholeClass.events.get(1).contains("\"studentId\":" + id));
+        assertEquals(1, student.events.size());
+        assertTrue(otherStudent.events.isEmpty());
+    }
+
+    @Test
+    public void rolledBackWritesAreNotPushed() throws Exception {
+        RecordingEmitter student = subscribe(1);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            studentAndGradeService.createGrade(90.00, 1, "history");
+            status.setRollbackOnly();
+        });
+        assertTrue(studentAndGradeService.createGrade(80.00, 1, "history"));
+
+        await(() -> student.events.size() == 1);
+        // Events go out in order, so the rolled back one would have come first
+        assertTrue(student.events.get(0).contains("\"grade\":80.0"));
+    }
+
+    @Test
+    public void slowSubscribersAreDropped() throws Exception {
+        RecordingEmitter fast = subscribe(1);
+        RecordingEmitter slow = subscribe(1);
+        slow.gate = new CountDownLatch(1);
+        int subscribers = gradebookEventBroadcaster.getSubscriberCount();
+        long evictions = gradebookEventBroadcaster.getEvictionCount();
+
+        // One event stuck in send and two in the buffer at most, so the fourth cannot fit. Each write waits for the
+        // fast subscriber, whose buffer would otherwise fill up as well when the writes outpace its dispatcher thread.
+        for (int i = 0; i < 4; i++) {
+            assertTrue(studentAndGradeService.createGrade(70.00 + i, 1, "science"));
+            int sent = i + 1;
+            await(() -> fast.events.size() == sent);
+        }
+
+        assertEquals(evictions + 1, gradebookEventBroadcaster.getEvictionCount());
+        assertEquals(subscribers - 1, gradebookEventBroadcaster.getSubscriberCount());
+
+        slow.gate.countDown();
+        await(() -> slow.completed);
+        assertTrue(slow.events.size() <= 1, "Nothing more is sent once a subscriber is dropped");
+    }
+
+    @Test
+    public void stalledWritesDoNotHoldUpOtherSubscribers() throws Exception {
+        // As many stuck connections as there are dispatcher threads
+        RecordingEmitter stuck = subscribe(1);
+        stuck.gate = new CountDownLatch(1);
+        RecordingEmitter alsoStuck = subscribe(1);
+        alsoStuck.gate = stuck.gate;
+        long evictions = gradebookEventBroadcaster.getEvictionCount();
+
+        assertTrue(studentAndGradeService.createGrade(90.00, 1, "math"));
+        RecordingEmitter fast = subscribe(1);
+        assertTrue(studentAndGradeService.createGrade(80.00, 1, "math"));
+
+        await(() -> fast.events.size() == 1);
+        assertEquals(evictions + 2, gradebookEventBroadcaster.getEvictionCount());
+
+        stuck.gate.countDown();
+        await(() -> stuck.completed && alsoStuck.completed);
+        assertTrue(studentAndGradeService.createGrade(70.00, 1, "math"));
+        await(() -> fast.events.size() == 2);
+    }
+
+    @Test
+    public void subscribeHttpRequest() throws Exception {
+        int subscribers = gradebookEventBroadcaster.getSubscriberCount();
+
+        MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders.get("/events"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        assertEquals(1800000, mvcResult.getRequest().getAsyncContext().getTimeout(), "The emitter sets its own timeout");
+        mockMvc.perform(MockMvcRequestBuilders.get("/studentInformation/{id}/events", 1))
+                .andExpect(request().asyncStarted());
+        assertEquals(subscribers + 2, gradebookEventBroadcaster.getSubscriberCount());
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/studentInformation/{id}/events", 0))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.status", is(404)));
+    }
+
+    @AfterEach
+    public void setupAfterTransaction() {
+        jdbc.execute(sqlDeleteStudent);
+        jdbc.execute(sqlDeleteMathGrade);
+        jdbc.execute(sqlDeleteScienceGrade);
+        jdbc.execute(sqlDeleteHistoryGrade);
+        jdbc.execute(sqlDeleteGradeAggregate);
+        jdbc.execute(sqlDeleteGradebookChange);
+    }
+
+    private RecordingEmitter subscribe(Integer studentId) {
+        RecordingEmitter emitter = new RecordingEmitter();
+        gradebookEventBroadcaster.subscribe(studentId, emitter);
+        return emitter;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Timed out waiting for the subscribers");
+            Thread.sleep(10);
+        }
+    }
+
+    // Keeps what would have been written to the connection. While the gate is closed send blocks, like a client
+    // that has stopped reading.
+    private static class RecordingEmitter extends SseEmitter {
+
+        final List<String> events = new CopyOnWriteArrayList<>();
+
+        volatile CountDownLatch gate = new CountDownLatch(0);
+
+        volatile boolean completed;
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            try {
+                gate.await();
+            } catch (InterruptedException exc) {
+                Thread.currentThread().interrupt();
+                throw new IOException(exc);
+            }
+            StringBuilder event = new StringBuilder();
+            for (DataWithMediaType data : builder.build()) {
+                event.append(data.getData());
+            }
+            events.add(event.toString());
+        }
+
+        @Override
+        public synchronized void complete() {
+            completed = true;
+        }
+    }
+}
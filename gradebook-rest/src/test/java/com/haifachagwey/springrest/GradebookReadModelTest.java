@@ -0,0 +1,167 @@
+package com.haifachagwey.springrest;
+
+import com.haifachagwey.springrest.models.CollegeStudent;
+import com.haifachagwey.springrest.models.GradeSubmission;
+import com.haifachagwey.springrest.models.GradebookCollegeStudent;
+import com.haifachagwey.springrest.service.GradebookReadModel;
+import com.haifachagwey.springrest.service.StudentAndGradeService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// The in-memory gradebook behind GET /: built from the tables, patched by each write once it commits,
+// and never changed under a reader that already holds a snapshot
+
+@TestPropertySource(value = "/application-test.properties", properties = "gradebook.read-model.enabled=true")
+@SpringBootTest
+@AutoConfigureMockMvc
+public class GradebookReadModelTest {
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private StudentAndGradeService studentAndGradeService;
+
+    @Autowired
+    private GradebookReadModel gradebookReadModel;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Value("${sql.script.create.student}")
+    private String sqlAddStudent;
+
+    @Value("${sql.script.create.math.grade}")
+    private String sqlAddMathGrade;
+
+    @Value("${sql.script.delete.student}")
+    private String sqlDeleteStudent;
+
+    @Value("${sql.script.delete.math.grade}")
+    private String sqlDeleteMathGrade;
+
+    @Value("${sql.script.delete.science.grade}")
+    private String sqlDeleteScienceGrade;
+
+    @Value("${sql.script.delete.history.grade}")
+    private String sqlDeleteHistoryGrade;
+
+    @Value("${sql.script.delete.grade.aggregate}")
+    private String sqlDeleteGradeAggregate;
+
+    @BeforeEach
+    public void setupDatabase() {
+        jdbc.execute(sqlAddStudent);
+        jdbc.execute(sqlAddMathGrade);
+        jdbc.execute("insert into student(id,firstname,lastname,email_address) values (2,'Chad','Darby','chad.darby@luv2code.com')");
+        gradebookReadModel.rebuild();
+    }
+
+    @Test
+    public void builtFromTheTables() {
+        List<GradebookCollegeStudent> students = gradebookReadModel.getStudents();
+
+        assertEquals(2, students.size());
+        assertEquals(1, students.get(0).getId());
+        assertEquals(1, students.get(0).getStudentGrades().getMathGradeResults().size());
+        assertEquals("Chad", students.get(1).getFirstname());
+        assertThrows(UnsupportedOperationException.class, () -> students.remove(0));
+    }
+
+    @Test
+    public void gradebookIsServedFromMemory() throws Exception {
+        // Writes that bypass the service are invisible until the next rebuild
+        jdbc.execute("delete from student where id = 2");
+        mockMvc.perform(MockMvcRequestBuilders.get("/"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].studentGrades.mathGradeResults[0].grade", is(100.0)));
+
+        gradebookReadModel.rebuild();
+        mockMvc.perform(MockMvcRequestBuilders.get("/"))
+                .andExpect(jsonPath("$", hasSize(1)));
+    }
+
+    @Test
+    public void writesPatchTheSnapshot() {
+        List<GradebookCollegeStudent> before = gradebookReadModel.getStudents();
+        long version = gradebookReadModel.getVersion();
+
+        int id = studentAndGradeService.createStudent("Jane", "Doe", "jane.doe@luv2code.com");
+        assertTrue(studentAndGradeService.createGrade(90.00, 2, "science"));
+        assertEquals(1, studentAndGradeService.deleteGrade(1, "math"));
+        studentAndGradeService.deleteStudent(1);
+
+        List<GradebookCollegeStudent> after = gradebookReadModel.getStudents();
+        assertEquals(version + 4, gradebookReadModel.getVersion());
+        assertEquals(2, after.size());
+        assertEquals(2, after.get(0).getId());
+        assertEquals(1, after.get(0).getStudentGrades().getScienceGradeResults().size());
+        assertEquals(id, after.get(1).getId());
+
+        // The snapshot taken before the writes is untouched
+        assertEquals(2, before.size());
+        assertEquals(1, before.get(0).getStudentGrades().getMathGradeResults().size());
+        assertEquals(0, before.get(1).getStudentGrades().getScienceGradeResults().size());
+    }
+
+    @Test
+    public void bulkWritesPatchTheSnapshot() {
+        studentAndGradeService.createStudents(List.of(new CollegeStudent("Jane", "Doe", "jane.doe@luv2code.com"),
+                new CollegeStudent("John", "Doe", "john.doe@luv2code.com")));
+        studentAndGradeService.createGrades(List.of(new GradeSubmission(80.00, "history", 1), new GradeSubmission(70.00, "math", 2)));
+
+        List<GradebookCollegeStudent> students = gradebookReadModel.getStudents();
+        assertEquals(4, students.size());
+        assertEquals("John", students.get(3).getFirstname());
+        assertEquals(1, students.get(0).getStudentGrades().getHistoryGradeResults().size());
+        assertEquals(1, students.get(1).getStudentGrades().getMathGradeResults().size());
+    }
+
+    @Test
+    public void patchWaitsForCommit() {
+        long version = gradebookReadModel.getVersion();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            studentAndGradeService.createGrade(90.00, 1, "history");
+            assertEquals(version, gradebookReadModel.getVersion(), "Unchanged while the insert is uncommitted");
+        });
+        assertEquals(1, gradebookReadModel.getStudents().get(0).getStudentGrades().getHistoryGradeResults().size());
+
+        transactionTemplate.executeWithoutResult(status -> {
+            studentAndGradeService.createGrade(90.00, 1, "history");
+            status.setRollbackOnly();
+        });
+        assertEquals(version + 1, gradebookReadModel.getVersion());
+    }
+
+    @AfterEach
+    public void setupAfterTransaction() {
+        jdbc.execute(sqlDeleteStudent);
+        jdbc.execute(sqlDeleteMathGrade);
+        jdbc.execute(sqlDeleteScienceGrade);
+        jdbc.execute(sqlDeleteHistoryGrade);
+        jdbc.execute(sqlDeleteGradeAggregate);
+    }
+}
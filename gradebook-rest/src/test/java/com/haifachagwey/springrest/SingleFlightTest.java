@@ -0,0 +1,147 @@
+package com.haifachagwey.springrest;
+
+import com.haifachagwey.springrest.service.SingleFlight;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Overlapping loads of one key run once and hand every caller the same result or the same failure; loads of
+// other keys, later loads and loads of a later generation run on their own
+
+public class SingleFlightTest {
+
+    private static final int CALLERS = 16;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    public void overlappingLoadsRunOnce() throws Exception {
+        SingleFlight<Integer, String> singleFlight = new SingleFlight<>("test", meterRegistry);
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<Future<String>> callers = callConcurrently(() -> singleFlight.load(1, () -> {
+            runs.incrementAndGet();
+            await(release);
+            return "student " + runs.get();
+        }));
+        awaitWaiting(singleFlight, CALLERS - 1);
+        release.countDown();
+
+        for (Future<String> caller : callers) {
+            assertEquals("student 1", caller.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(1, runs.get());
+        assertEquals(1, singleFlight.getLoadCount());
+        assertEquals(CALLERS - 1, singleFlight.getCoalescedCount());
+        assertEquals(CALLERS - 1, (long) meterRegistry.get("gradebook.coalescing.coalesced").tag("name", "test").counter().count());
+
+        // Finished loads are not kept
+        assertEquals("again", singleFlight.load(1, () -> "again"));
+        assertEquals(2, singleFlight.getLoadCount());
+    }
+
+    @Test
+    public void failuresReachEveryWaiter() throws Exception {
+        SingleFlight<Integer, String> singleFlight = new SingleFlight<>("test", meterRegistry);
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<Future<String>> callers = callConcurrently(() -> singleFlight.load(1, () -> {
+            await(release);
+            throw new IllegalStateException("database is down");
+        }));
+        awaitWaiting(singleFlight, CALLERS - 1);
+        release.countDown();
+
+        for (Future<String> caller : callers) {
+            Exception exc = assertThrows(Exception.class, () -> caller.get(10, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, exc.getCause());
+            assertEquals("database is down", exc.getCause().getMessage());
+        }
+        assertEquals("recovered", singleFlight.load(1, () -> "recovered"));
+    }
+
+    @Test
+    public void laterGenerationsDoNotJoinOlderLoads() throws Exception {
+        SingleFlight<Integer, String> singleFlight = new SingleFlight<>("test", meterRegistry);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        Future<String> before = executor.submit(() -> singleFlight.load(1, 0, () -> {
+            started.countDown();
+            await(release);
+            return "before the write";
+        }));
+        await(started);
+
+        assertEquals("after the write", singleFlight.load(1, 1, () -> "after the write"));
+        assertEquals("other student", singleFlight.load(2, 1, () -> "other student"));
+        assertEquals(0, singleFlight.getCoalescedCount());
+
+        release.countDown();
+        assertEquals("before the write", before.get(10, TimeUnit.SECONDS));
+        executor.shutdown();
+    }
+
+    @Test
+    public void earlierGenerationsJoinLaterLoads() throws Exception {
+        SingleFlight<Integer, String> singleFlight = new SingleFlight<>("test", meterRegistry);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        Future<String> after = executor.submit(() -> singleFlight.load(1, 1, () -> {
+            started.countDown();
+            await(release);
+            return "after the write";
+        }));
+        await(started);
+        Future<String> before = executor.submit(() -> singleFlight.load(1, 0, () -> "before the write"));
+        awaitWaiting(singleFlight, 1);
+        release.countDown();
+
+        assertEquals("after the write", after.get(10, TimeUnit.SECONDS));
+        assertEquals("after the write", before.get(10, TimeUnit.SECONDS));
+        assertEquals(1, singleFlight.getLoadCount());
+        executor.shutdown();
+    }
+
+    private static List<Future<String>> callConcurrently(Callable<String> call) {
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        List<Future<String>> callers = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            callers.add(executor.submit(call));
+        }
+        executor.shutdown();
+        return callers;
+    }
+
+    // Every caller but the one running the load has joined it
+    private static void awaitWaiting(SingleFlight<?, ?> singleFlight, long waiting) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (singleFlight.getCoalescedCount() < waiting) {
+            assertTrue(System.nanoTime() < deadline, "Timed out waiting for the callers to join");
+            Thread.sleep(10);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException exc) {
+            throw new IllegalStateException(exc);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.haifachagwey.springrest;
+
+import com.haifachagwey.springrest.service.GradeAggregateService;
+import com.haifachagwey.springrest.service.GradebookChangeLog;
+import com.haifachagwey.springrest.service.StudentAndGradeService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Hammers createGrade from many threads at once and checks every insert landed as its own, uncorrupted row
+
+@TestPropertySource("/application-test.properties")
+@SpringBootTest
+public class StudentAndGradeServiceConcurrencyTest {
+
+    private static final int THREADS = 64;
+
+    private static final int INSERTS_PER_THREAD = 250;
+
+    private static final String[] GRADE_TYPES = {"math", "science", "history"};
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private StudentAndGradeService studentAndGradeService;
+
+    @Autowired
+    private GradeAggregateService gradeAggregateService;
+
+    @Autowired
+    private GradebookChangeLog gradebookChangeLog;
+
+    @Value("${sql.script.create.student}")
+    private String sqlAddStudent;
+
+    @Value("${sql.script.delete.student}")
+    private String sqlDeleteStudent;
+
+    @Value("${sql.script.delete.math.grade}")
+    private String sqlDeleteMathGrade;
+
+    @Value("${sql.script.delete.science.grade}")
+    private String sqlDeleteScienceGrade;
+
+    @Value("${sql.script.delete.history.grade}")
+    private String sqlDeleteHistoryGrade;
+
+    @Value("${sql.script.delete.grade.aggregate}")
+    private String sqlDeleteGradeAggregate;
+
+    @BeforeEach
+    public void setupDatabase() {
+        jdbc.execute(sqlAddStudent);
+    }
+
+    @Test
+    public void createGradeServiceUnderContention() throws Exception {
+        long version = gradebookChangeLog.changesSince(null, 1).getVersion();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch startGate = new CountDownLatch(1);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            // Every thread writes its own index as the grade so a lost or overwritten row shows up in the counts
+            double grade = thread;
+            workers.add(executor.submit(() -> {
+                startGate.await();
+                for (int i = 0; i < INSERTS_PER_THREAD; i++) {
+                    assertTrue(studentAndGradeService.createGrade(grade, 1, GRADE_TYPES[i % GRADE_TYPES.length]));
+                }
+                return null;
+            }));
+        }
+        startGate.countDown();
+        for (Future<?> worker : workers) {
+            worker.get(2, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        for (int subject = 0; subject < GRADE_TYPES.length; subject++) {
+            int expectedPerThread = (INSERTS_PER_THREAD - subject + GRADE_TYPES.length - 1) / GRADE_TYPES.length;
+            List<Map<String, Object>> rows = jdbc.queryForList("select grade, count(*) as total, count(distinct id) as ids from grade"
+                    + " where subject = ? and student_id = 1 group by grade", subject);
+            assertEquals(THREADS, rows.size(), GRADE_TYPES[subject] + " should have one group per thread");
+            for (Map<String, Object> row : rows) {
+                assertEquals(expectedPerThread, ((Number) row.get("total")).intValue(), "No " + GRADE_TYPES[subject] + " insert should be lost");
+                assertEquals(expectedPerThread, ((Number) row.get("ids")).intValue(), "Every " + GRADE_TYPES[subject] + " insert should get its own row");
+            }
+            assertEquals(THREADS * expectedPerThread, jdbc.queryForObject("select grade_count from grade_aggregate where student_id = 1 and subject = ?",
+                    Integer.class, subject), "No " + GRADE_TYPES[subject] + " aggregate update should be lost");
+        }
+        assertEquals(0, gradeAggregateService.verify(false).getMismatched());
+
+        // One change feed entry per insert, numbered without gaps
+        long inserts = (long) THREADS * INSERTS_PER_THREAD;
+        assertEquals(version + inserts, gradebookChangeLog.changesSince(null, 1).getVersion());
+        assertEquals(inserts, jdbc.queryForObject("select count(*) from gradebook_change where version > ? and change_type = 'GRADE_CREATED'", Long.class, version));
+    }
+
+    @AfterEach
+    public void setupAfterTransaction() {
+        jdbc.execute(sqlDeleteStudent);
+        jdbc.execute(sqlDeleteMathGrade);
+        jdbc.execute(sqlDeleteScienceGrade);
+        jdbc.execute(sqlDeleteHistoryGrade);
+        jdbc.execute(sqlDeleteGradeAggregate);
+    }
+}
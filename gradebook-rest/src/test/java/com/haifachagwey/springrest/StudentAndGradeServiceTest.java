@@ -1,11 +1,14 @@
 package com.haifachagwey.springrest;
 
 import com.haifachagwey.springrest.models.*;
-import com.haifachagwey.springrest.repository.HistoryGradesDao;
-import com.haifachagwey.springrest.repository.MathGradesDao;
-import com.haifachagwey.springrest.repository.ScienceGradesDao;
+import com.haifachagwey.springrest.repository.GradeDao;
 import com.haifachagwey.springrest.repository.StudentDao;
+import com.haifachagwey.springrest.service.GradeAggregateService;
+import com.haifachagwey.springrest.service.GradeRankingService;
+import com.haifachagwey.springrest.service.GradeStatisticsService;
 import com.haifachagwey.springrest.service.StudentAndGradeService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -17,8 +20,19 @@ import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.jdbc.Sql;
 import org.springframework.test.context.jdbc.SqlConfig;
 import org.springframework.test.context.jdbc.SqlGroup;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -34,16 +48,25 @@ public class StudentAndGradeServiceTest {
     private StudentDao studentDao;
 
     @Autowired
-    private MathGradesDao mathGradeDao;
+    private GradeDao gradeDao;
 
     @Autowired
-    private ScienceGradesDao scienceGradeDao;
+    private StudentAndGradeService studentAndGradeService;
 
     @Autowired
-    private HistoryGradesDao historyGradeDao;
+    private GradeAggregateService gradeAggregateService;
 
     @Autowired
-    private StudentAndGradeService studentAndGradeService;
+    private GradeStatisticsService gradeStatisticsService;
+
+    @Autowired
+    private GradeRankingService gradeRankingService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
 
 
     @Value("${sql.script.create.student}")
@@ -70,6 +93,9 @@ public class StudentAndGradeServiceTest {
     @Value("${sql.script.delete.history.grade}")
     private String sqlDeleteHistoryGrade;
 
+    @Value("${sql.script.delete.grade.aggregate}")
+    private String sqlDeleteGradeAggregate;
+
     @BeforeEach
     public void setupDatabase() {
         jdbc.execute(sqlAddStudent);
@@ -97,6 +123,287 @@ public class StudentAndGradeServiceTest {
     }
 
 
+    @SqlGroup({ @Sql(scripts = "/insertData.sql", config = @SqlConfig(commentPrefix = "`")),
+            @Sql("/overrideData.sql"),
+            @Sql("/insertGrade.sql")})
+    @Test
+    public void getGradebookServiceGradesBelongToEachStudent() {
+        Gradebook gradebook = studentAndGradeService.getGradebook();
+        for (GradebookCollegeStudent student : gradebook.getStudents()) {
+            for (Grade grade : student.getStudentGrades().getMathGradeResults()) {
+                assertEquals(student.getId(), grade.getStudentId());
+            }
+        }
+        assertNotSame(gradebook.getStudents().get(0).getStudentGrades(), gradebook.getStudents().get(1).getStudentGrades());
+        assertThrows(UnsupportedOperationException.class,
+                () -> gradebook.getStudents().get(0).getStudentGrades().getMathGradeResults().clear());
+    }
+
+    @SqlGroup({ @Sql(scripts = "/insertData.sql", config = @SqlConfig(commentPrefix = "`")),
+            @Sql("/overrideData.sql"),
+            @Sql("/insertGrade.sql")})
+    @Test
+    public void getGradebookServiceLoadsNoEntities() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        assertEquals(5, studentAndGradeService.getGradebook().getStudents().size());
+        assertEquals(2, studentAndGradeService.getGradebookPage(0, 2).getStudents().size());
+        assertTrue(studentAndGradeService.checkIfStudentExists(1));
+
+        assertEquals(0, statistics.getEntityLoadCount(), "The read path should only build projections");
+        assertEquals(0, statistics.getFlushCount(), "A read-only transaction never flushes");
+    }
+
+    @SqlGroup({ @Sql(scripts = "/insertData.sql", config = @SqlConfig(commentPrefix = "`")),
+            @Sql("/overrideData.sql"),
+            @Sql("/insertGrade.sql")})
+    @Test
+    public void getGradebookPageService() {
+        Gradebook firstPage = studentAndGradeService.getGradebookPage(0, 2);
+        assertEquals(2, firstPage.getStudents().size());
+        assertEquals(1, firstPage.getStudents().get(0).getId());
+        assertEquals(11, firstPage.getStudents().get(1).getId());
+        assertEquals(2, firstPage.getStudents().get(1).getStudentGrades().getMathGradeResults().size());
+
+        Gradebook secondPage = studentAndGradeService.getGradebookPage(11, 10);
+        assertEquals(3, secondPage.getStudents().size());
+        assertEquals(12, secondPage.getStudents().get(0).getId());
+        for (GradebookCollegeStudent student : secondPage.getStudents()) {
+            assertEquals(2, student.getStudentGrades().getHistoryGradeResults().size());
+        }
+
+        assertTrue(studentAndGradeService.getGradebookPage(14, 10).getStudents().isEmpty());
+    }
+
+    @SqlGroup({ @Sql(scripts = "/insertData.sql", config = @SqlConfig(commentPrefix = "`")),
+            @Sql("/overrideData.sql"),
+            @Sql("/insertGrade.sql")})
+    @Test
+    public void exportGradebookService() {
+        // A grade whose student is gone must not end up on a neighbouring student
+        jdbc.execute("insert into grade(subject,student_id,grade) values (0,5,42.00)");
+        List<GradebookCollegeStudent> exported = new ArrayList<>();
+        studentAndGradeService.exportGradebook(exported::add);
+
+        assertEquals(5, exported.size());
+        int previousId = 0;
+        for (GradebookCollegeStudent student : exported) {
+            assertTrue(student.getId() > previousId, "Students are exported in id order");
+            previousId = student.getId();
+            int expectedGrades = student.getId() == 1 ? 1 : 2;
+            assertEquals(expectedGrades, student.getStudentGrades().getMathGradeResults().size());
+            assertEquals(expectedGrades, student.getStudentGrades().getScienceGradeResults().size());
+            assertEquals(expectedGrades, student.getStudentGrades().getHistoryGradeResults().size());
+            for (Grade grade : student.getStudentGrades().getMathGradeResults()) {
+                assertEquals(student.getId(), grade.getStudentId());
+            }
+        }
+    }
+
+    // 10k students x 30 grades: one statement per table whatever the roster size, each row fetched once, and no
+    // entities. The in-memory assembly against the old per-student scan is timed in GradebookAssemblyBenchmark.
+    @Test
+    public void getGradebookServiceAtScale() {
+        int numberOfStudents = 10_000;
+        int gradesPerSubject = 10;
+        List<Object[]> students = new ArrayList<>();
+        List<Object[]> grades = new ArrayList<>();
+        for (int id = 1000; id < 1000 + numberOfStudents; id++) {
+            students.add(new Object[] {id, "Student", "Number" + id, "student" + id + "@luv2code_school.com"});
+            for (int i = 0; i < gradesPerSubject; i++) {
+                grades.add(new Object[] {id, 60.00 + i});
+            }
+        }
+        jdbc.batchUpdate("insert into student(id,firstname,lastname,email_address) values (?,?,?,?)", students);
+        jdbc.batchUpdate("insert into grade(subject,student_id,grade) values (0,?,?)", grades);
+        jdbc.batchUpdate("insert into grade(subject,student_id,grade) values (1,?,?)", grades);
+        jdbc.batchUpdate("insert into grade(subject,student_id,grade) values (2,?,?)", grades);
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        statistics.clear();
+        Gradebook gradebook = studentAndGradeService.getGradebook();
+
+        assertEquals(2, statistics.getPrepareStatementCount(), "The students, then their grades in every subject");
+        assertEquals((numberOfStudents + 1) + 3L * (grades.size() + 1), fetchedRows(statistics), "Every row is fetched once");
+        assertEquals(0, statistics.getEntityLoadCount());
+        assertEquals(numberOfStudents + 1, gradebook.getStudents().size());
+        GradebookCollegeStudent last = gradebook.getStudents().get(gradebook.getStudents().size() - 1);
+        assertEquals(gradesPerSubject, last.getStudentGrades().getMathGradeResults().size());
+        assertEquals(gradesPerSubject, last.getStudentGrades().getScienceGradeResults().size());
+        assertEquals(gradesPerSubject, last.getStudentGrades().getHistoryGradeResults().size());
+    }
+
+    @Test
+    public void gradeSummariesService() {
+        jdbc.execute("insert into grade(subject,student_id,grade) values (0,1,80.00),(0,1,60.50),(0,2,90.00)");
+
+        List<GradeSummary> subjects = studentAndGradeService.getSubjectSummaries();
+        assertEquals(3, subjects.size());
+        assertEquals("math", subjects.get(0).getGradeType());
+        assertNull(subjects.get(0).getStudentId());
+        assertEquals(4, subjects.get(0).getGradeCount());
+        assertEquals(82.63, subjects.get(0).getAverage());
+        assertEquals(60.50, subjects.get(0).getMinGrade());
+        assertEquals(100.00, subjects.get(0).getMaxGrade());
+        assertEquals(1, subjects.get(1).getGradeCount());
+
+        jdbc.execute("insert into student(id,firstname,lastname,email_address) values (2,'Mary','Public','mary.public@gmail.com')");
+        List<GradeSummary> students = studentAndGradeService.getStudentSummaries("math", 0, 10);
+        assertEquals(2, students.size());
+        assertEquals(1, students.get(0).getStudentId());
+        assertEquals(3, students.get(0).getGradeCount());
+        assertEquals(80.17, students.get(0).getAverage());
+        assertEquals(2, students.get(1).getStudentId());
+        assertEquals(90.00, students.get(1).getMaxGrade());
+        assertEquals(1, studentAndGradeService.getStudentSummaries("math", 1, 10).size());
+
+        jdbc.execute("delete from student where id = 2");
+        jdbc.execute("insert into student(id,firstname,lastname,email_address) values (3,'Chad','Darby','chad.darby@gmail.com')");
+        students = studentAndGradeService.getStudentSummaries("math", 0, 10);
+        assertEquals(2, students.size(), "Grades left behind by a deleted student are not reported");
+        assertEquals(3, students.get(1).getStudentId());
+        assertEquals(0, students.get(1).getGradeCount());
+        assertNull(students.get(1).getAverage());
+        assertEquals(1, studentAndGradeService.getStudentSummaries("math", 0, 1).size());
+        assertNull(studentAndGradeService.getStudentSummaries("literature", 0, 10));
+    }
+
+    // Only the aggregates leave the database: one statement per subject for the class figures, and for a page the
+    // students plus one grouped query over their id range. Timings at 1M grades are in GradeAnalyticsBenchmark,
+    // and QueryPlanTest checks that the per-student aggregate uses the student_id index.
+    @Test
+    public void gradeSummariesServiceSendsOnlyAggregates() {
+        List<Object[]> students = new ArrayList<>();
+        List<Object[]> grades = new ArrayList<>();
+        for (int id = 2; id <= 2_000; id++) {
+            students.add(new Object[] {id, "Student", "Number" + id, "student" + id + "@luv2code_school.com"});
+        }
+        for (int i = 0; i < 20_000; i++) {
+            grades.add(new Object[] {1 + i % 2_000, (i % 10_001) / 100.0});
+        }
+        jdbc.batchUpdate("insert into student(id,firstname,lastname,email_address) values (?,?,?,?)", students);
+        jdbc.batchUpdate("insert into grade(subject,student_id,grade) values (0,?,?)", grades);
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        statistics.clear();
+        List<GradeSummary> subjects = studentAndGradeService.getSubjectSummaries();
+        assertEquals(20_001, subjects.get(0).getGradeCount());
+        assertEquals(0.00, subjects.get(0).getMinGrade());
+        assertEquals(100.00, subjects.get(0).getMaxGrade());
+        assertEquals(1, statistics.getPrepareStatementCount(), "One statement grouped by subject");
+        assertEquals(3, fetchedRows(statistics), "One row per subject");
+        assertEquals(0, statistics.getEntityLoadCount());
+
+        statistics.clear();
+        List<GradeSummary> page = studentAndGradeService.getStudentSummaries("math", 1_000, 100);
+        assertEquals(100, page.size());
+        assertEquals(1_001, page.get(0).getStudentId());
+        assertEquals(10, page.get(0).getGradeCount());
+        assertEquals(2, statistics.getPrepareStatementCount(), "The students, then their grades grouped by student");
+        assertEquals(200, fetchedRows(statistics), "One row per student on the page for each statement");
+        assertEquals(0, statistics.getEntityLoadCount());
+        assertEquals(0, studentAndGradeService.getStudentSummaries("science", 1_000, 1).get(0).getGradeCount());
+    }
+
+    private static long fetchedRows(Statistics statistics) {
+        long rows = 0;
+        for (String query : statistics.getQueries()) {
+            rows += statistics.getQueryStatistics(query).getExecutionRowCount();
+        }
+        return rows;
+    }
+
+    @Test
+    public void gradeDistributionFollowsCommittedWrites() {
+        gradeStatisticsService.rebuild();
+        studentAndGradeService.createGrade(60.00, 1, "math");
+        studentAndGradeService.createGrade(70.00, 1, "math");
+        studentAndGradeService.createGrades(List.of(new GradeSubmission(80.00, "math", 1), new GradeSubmission(90.00, "math", 1)));
+
+        GradeDistribution math = gradeStatisticsService.getDistribution(Subject.MATH, 10);
+        assertEquals(5, math.getCount());
+        assertEquals(80.00, math.getMedian());
+        assertEquals(60.00, math.getP10());
+        assertEquals(100.00, math.getP90());
+        assertEquals(1, math.getHistogram().get(6).getCount());
+
+        int lowestMathGrade = jdbc.queryForObject("select id from grade where subject = 0 and grade = 60.00", Integer.class);
+        studentAndGradeService.deleteGrade(lowestMathGrade, "math");
+        math = gradeStatisticsService.getDistribution(Subject.MATH, 10);
+        assertEquals(4, math.getCount());
+        assertEquals(70.00, math.getMinGrade());
+
+        // A finer grade is stored as given and counted at the nearest hundredth
+        assertTrue(studentAndGradeService.createGrade(69.996, 1, "math"));
+        math = gradeStatisticsService.getDistribution(Subject.MATH, 10);
+        assertEquals(5, math.getCount());
+        assertEquals(70.00, math.getMinGrade());
+
+        // Student deletes are left to the rebuild
+        studentAndGradeService.deleteStudent(1);
+        assertEquals(5, gradeStatisticsService.getDistribution(Subject.MATH, 10).getCount());
+        gradeStatisticsService.rebuild();
+        assertEquals(0, gradeStatisticsService.getDistribution(Subject.MATH, 10).getCount());
+        assertEquals(0, gradeStatisticsService.getDistribution(Subject.SCIENCE, 10).getCount());
+    }
+
+    // A rebuild that starts after a grade is committed but before the histogram has it neither waits for the
+    // update nor counts the grade a second time when the update arrives
+    @Test
+    public void gradeDistributionRebuildCountsACommitOnce() throws Exception {
+        gradeStatisticsService.rebuild();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        AtomicReference<Future<?>> rebuild = new AtomicReference<>();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        rebuild.set(executor.submit(() -> gradeStatisticsService.rebuild()));
+                        assertDoesNotThrow(() -> rebuild.get().get(10, TimeUnit.SECONDS));
+                    }
+                });
+                studentAndGradeService.createGrade(60.00, 1, "math");
+            });
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(2, gradeStatisticsService.getDistribution(Subject.MATH, 10).getCount());
+    }
+
+    @Test
+    public void gradeRankingFollowsCommittedWrites() {
+        gradeAggregateService.rebuild();
+        gradeRankingService.rebuild();
+        jdbc.batchUpdate("insert into student(id,firstname,lastname,email_address) values (?,?,?,?)", List.of(
+                new Object[] {2, "Chad", "Darby", "chad.darby@gmail.com"},
+                new Object[] {3, "Mary", "Public", "mary.public@gmail.com"}));
+        studentAndGradeService.createGrade(90.00, 2, "math");
+        studentAndGradeService.createGrades(List.of(new GradeSubmission(100.00, "math", 3), new GradeSubmission(80.00, "math", 3)));
+
+        List<StudentRank> top = gradeRankingService.getTopStudents(Subject.MATH, 10);
+        assertEquals(3, top.size());
+        assertEquals(1, top.get(0).getStudentId());
+        assertEquals(100.00, top.get(0).getAverage());
+        assertEquals(2, top.get(1).getRank());
+        assertEquals(2, top.get(2).getRank(), "Students 2 and 3 are tied on 90");
+        assertEquals("math", top.get(0).getGradeType());
+
+        int lowGrade = jdbc.queryForObject("select id from grade where subject = 0 and student_id = 3 and grade = 80.00", Integer.class);
+        studentAndGradeService.deleteGrade(lowGrade, "math");
+        StudentRank rank = gradeRankingService.getRank(Subject.MATH, 3);
+        assertEquals(1, rank.getRank());
+        assertEquals(100.00, rank.getAverage());
+        assertEquals(3, gradeRankingService.getRank(Subject.MATH, 2).getRank());
+
+        studentAndGradeService.deleteStudent(1);
+        assertNull(gradeRankingService.getRank(Subject.MATH, 1));
+        assertNull(gradeRankingService.getRank(Subject.SCIENCE, 1));
+        assertEquals(2, gradeRankingService.getRank(Subject.MATH, 2).getRank());
+        assertEquals(2, gradeRankingService.getRank(Subject.MATH, 2).getOutOf());
+    }
+
     @Test
     public void checkIfStudentExists() {
         assertTrue(studentAndGradeService.checkIfStudentExists(1), "@BeforeTransaction creates student : return true");
@@ -113,9 +420,9 @@ public class StudentAndGradeServiceTest {
     @Test
     public void deleteStudentService() {
         Optional<CollegeStudent> deletedCollegeStudent = studentDao.findById(1);
-        Optional<MathGrade> deletedMathGrade = mathGradeDao.findById(1);
-        Optional<ScienceGrade> deletedScienceGrade = scienceGradeDao.findById(1);
-        Optional<HistoryGrade> deletedHistoryGrade = historyGradeDao.findById(1);
+        Optional<SubjectGrade> deletedMathGrade = gradeDao.findById(new SubjectGrade.Key(Subject.MATH, 1));
+        Optional<SubjectGrade> deletedScienceGrade = gradeDao.findById(new SubjectGrade.Key(Subject.SCIENCE, 1));
+        Optional<SubjectGrade> deletedHistoryGrade = gradeDao.findById(new SubjectGrade.Key(Subject.HISTORY, 1));
 
         assertTrue(deletedCollegeStudent.isPresent(), "Should return true");
         assertTrue(deletedMathGrade.isPresent(), "Should return true");
@@ -125,9 +432,9 @@ public class StudentAndGradeServiceTest {
         studentAndGradeService.deleteStudent(1);
 
         deletedCollegeStudent = studentDao.findById(1);
-        deletedMathGrade = mathGradeDao.findById(1);
-        deletedScienceGrade = scienceGradeDao.findById(1);
-        deletedHistoryGrade = historyGradeDao.findById(1);
+        deletedMathGrade = gradeDao.findById(new SubjectGrade.Key(Subject.MATH, 1));
+        deletedScienceGrade = gradeDao.findById(new SubjectGrade.Key(Subject.SCIENCE, 1));
+        deletedHistoryGrade = gradeDao.findById(new SubjectGrade.Key(Subject.HISTORY, 1));
 
         assertFalse(deletedCollegeStudent.isPresent(), "Should return false");
         assertFalse(deletedMathGrade.isPresent(), "Should return false");
@@ -136,6 +443,30 @@ public class StudentAndGradeServiceTest {
     }
 
 
+    @Test
+    public void deleteStudentServiceIsSetBased() {
+        List<Object[]> grades = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            grades.add(new Object[] {1, 75.00});
+        }
+        jdbc.batchUpdate("insert into grade(subject,student_id,grade) values (0,?,?)", grades);
+        jdbc.batchUpdate("insert into grade(subject,student_id,grade) values (1,?,?)", grades);
+        jdbc.batchUpdate("insert into grade(subject,student_id,grade) values (2,?,?)", grades);
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        statistics.clear();
+        studentAndGradeService.deleteStudent(1);
+
+        assertEquals(3, statistics.getPrepareStatementCount(), "One delete for the student, one for their grades and one for the aggregates");
+        assertEquals(0, jdbc.queryForObject("select count(*) from grade where subject = 0 and student_id = 1", Integer.class));
+        assertEquals(0, jdbc.queryForObject("select count(*) from grade where subject = 1 and student_id = 1", Integer.class));
+        assertEquals(0, jdbc.queryForObject("select count(*) from grade where subject = 2 and student_id = 1", Integer.class));
+
+        statistics.clear();
+        studentAndGradeService.deleteStudent(1);
+        assertEquals(1, statistics.getPrepareStatementCount(), "A missing student should stop after the student delete");
+    }
+
     @Test
     public void getStudentService() {
         GradebookCollegeStudent gradebookCollegeStudentTest = studentAndGradeService.studentInformation(1);
@@ -173,9 +504,9 @@ public class StudentAndGradeServiceTest {
         studentAndGradeService.createGrade(80.50, 2, "history");
         studentAndGradeService.createGrade(80.50, 2, "literature");
 
-        Iterable<MathGrade> mathGrades  = mathGradeDao.findGradeByStudentId(2);
-        Iterable<ScienceGrade> scienceGrades  = scienceGradeDao.findGradeByStudentId(2);
-        Iterable<HistoryGrade> historyGrades  = historyGradeDao.findGradeByStudentId(2);
+        Iterable<SubjectGrade> mathGrades  = gradeDao.findGradeBySubjectAndStudentId(Subject.MATH.getCode(), 2);
+        Iterable<SubjectGrade> scienceGrades  = gradeDao.findGradeBySubjectAndStudentId(Subject.SCIENCE.getCode(), 2);
+        Iterable<SubjectGrade> historyGrades  = gradeDao.findGradeBySubjectAndStudentId(Subject.HISTORY.getCode(), 2);
 
         assertTrue(mathGrades.iterator().hasNext(),
                 "Student Service creates the grade: return true");
@@ -185,6 +516,33 @@ public class StudentAndGradeServiceTest {
                 "Student Service creates the grade: return true");
     }
 
+    @Test
+    public void createGradesService() {
+        List<GradeSubmission> grades = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            grades.add(new GradeSubmission(50.00 + i % 50, new String[] {"math", "science", "history"}[i % 3], 1));
+        }
+        grades.add(new GradeSubmission(80.50, "math", 2));
+        grades.add(new GradeSubmission(180.50, "math", 1));
+        grades.add(new GradeSubmission(80.50, "literature", 1));
+
+        GradeBatchResult result = studentAndGradeService.createGrades(grades);
+
+        assertEquals(3000, result.getAccepted());
+        assertEquals(3, result.getRejected().size());
+        assertEquals(3000, result.getRejected().get(0).getRow());
+        assertEquals("Student was not found", result.getRejected().get(0).getReason());
+        assertEquals(3001, result.getRejected().get(1).getRow());
+        assertEquals("Grade must be between 0 and 100", result.getRejected().get(1).getReason());
+        assertEquals(3002, result.getRejected().get(2).getRow());
+        assertEquals("Unknown grade type", result.getRejected().get(2).getReason());
+
+        // Each subject already has the grade inserted by @BeforeEach
+        assertEquals(1001, jdbc.queryForObject("select count(*) from grade where subject = 0 and student_id = 1", Integer.class));
+        assertEquals(1001, jdbc.queryForObject("select count(*) from grade where subject = 1 and student_id = 1", Integer.class));
+        assertEquals(1001, jdbc.queryForObject("select count(*) from grade where subject = 2 and student_id = 1", Integer.class));
+    }
+
     @Test
     public void deleteGradeService() {
         assertEquals(1, studentAndGradeService.deleteGrade(1, "math"),
@@ -199,11 +557,88 @@ public class StudentAndGradeServiceTest {
                 "No student should have 0 id : return false");
     }
 
+    @Test
+    public void gradeAggregatesFollowCreateAndDelete() {
+        // Take in the @BeforeEach grades, which went in behind the service's back
+        gradeAggregateService.rebuild();
+        studentAndGradeService.createGrade(80.50, 2, "math");
+        studentAndGradeService.createGrade(90.25, 2, "math");
+        studentAndGradeService.createGrade(70.00, 2, "math");
+        studentAndGradeService.createGrade(65.00, 2, "history");
+
+        List<GradeAggregate> aggregates = gradeAggregateService.findByStudentId(2);
+        assertEquals(2, aggregates.size());
+        GradeAggregate math = aggregates.get(0);
+        assertEquals("math", math.getGradeType());
+        assertEquals(3, math.getGradeCount());
+        assertEquals(240.75, math.getTotal(), 1e-9);
+        assertEquals(70.00, math.getMinGrade());
+        assertEquals(90.25, math.getMaxGrade());
+        assertEquals(80.25, math.getAverage());
+
+        int lowestMathGrade = jdbc.queryForObject("select id from grade where subject = 0 and student_id = 2 and grade = 70.00", Integer.class);
+        studentAndGradeService.deleteGrade(lowestMathGrade, "math");
+        math = gradeAggregateService.findByStudentId(2).get(0);
+        assertEquals(2, math.getGradeCount());
+        assertEquals(80.50, math.getMinGrade(), "Deleting the minimum should bring the next lowest grade up");
+        assertEquals(85.38, math.getAverage());
+
+        int historyGrade = jdbc.queryForObject("select id from grade where subject = 2 and student_id = 2", Integer.class);
+        studentAndGradeService.deleteGrade(historyGrade, "history");
+        GradeAggregate history = gradeAggregateService.findByStudentId(2).get(1);
+        assertEquals(0, history.getGradeCount());
+        assertNull(history.getAverage());
+        assertNull(history.getMinGrade());
+
+        assertEquals(0, gradeAggregateService.verify(false).getMismatched());
+    }
+
+    @Test
+    public void gradeAggregatesFollowBatchUpload() {
+        List<GradeSubmission> grades = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            grades.add(new GradeSubmission(50.00 + i % 50, new String[] {"math", "science", "history"}[i % 3], 2 + i % 4));
+        }
+        jdbc.batchUpdate("insert into student(id,firstname,lastname,email_address) values (?,?,?,?)", List.of(
+                new Object[] {2, "Chad", "Darby", "chad.darby@gmail.com"},
+                new Object[] {3, "Mary", "Public", "mary.public@gmail.com"},
+                new Object[] {4, "John", "Doe", "john.doe@gmail.com"},
+                new Object[] {5, "Ajay", "Rao", "ajay.rao@gmail.com"}));
+
+        studentAndGradeService.createGrades(grades);
+
+        // The @BeforeEach grades went in behind the service's back; only they can disagree
+        GradeAggregateReport report = gradeAggregateService.verify(false);
+        assertEquals(3, report.getMismatched());
+        assertEquals(4 * 3 + 3, report.getChecked());
+    }
+
+    @Test
+    public void verifyGradeAggregatesDetectsAndRepairsDrift() {
+        GradeAggregateReport report = gradeAggregateService.verify(false);
+        assertEquals(3, report.getMismatched(), "The @BeforeEach grades were inserted without going through the service");
+        assertFalse(report.isRebuilt());
+
+        report = gradeAggregateService.verify(true);
+        assertTrue(report.isRebuilt());
+        assertEquals(0, gradeAggregateService.verify(false).getMismatched());
+        assertEquals(100.00, gradeAggregateService.findByStudentId(1).get(0).getAverage());
+
+        jdbc.update("update grade_aggregate set total = total + 1 where student_id = 1 and subject = 1");
+        jdbc.update("insert into grade_aggregate(student_id,subject,total,grade_count,min_grade,max_grade) values (9,0,50,1,50,50)");
+        assertEquals(2, gradeAggregateService.verify(false).getMismatched());
+
+        gradeAggregateService.rebuild();
+        assertEquals(0, gradeAggregateService.verify(false).getMismatched());
+        assertEquals(0, jdbc.queryForObject("select count(*) from grade_aggregate where student_id = 9", Integer.class));
+    }
+
     @AfterEach
     public void setupAfterTransaction() {
         jdbc.execute(sqlDeleteStudent);
         jdbc.execute(sqlDeleteMathGrade);
         jdbc.execute(sqlDeleteScienceGrade);
         jdbc.execute(sqlDeleteHistoryGrade);
+        jdbc.execute(sqlDeleteGradeAggregate);
     }
 }